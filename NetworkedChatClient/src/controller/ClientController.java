@@ -64,30 +64,99 @@ public class ClientController
 	//
 	// Send an encrypted message to the specified user.
 	//
-	private void sendUserMessage(String sender, String recipient, String message)
+	private void sendUserMessage(String recipient, String message)
 	{
 		//Encrypt message
 		PublicRSAKey recipientPublicKey = chatData.getClientsPublicKey(recipient);
 		ArrayList<BigInteger> encryptedMessage = encryptedMessageBuilder.encryptMessage(message, recipientPublicKey);
 
-		//Send message
-		ClientMessage clientMessage = new ClientMessage(new ClientInfoModel(sender, encryptedMessageBuilder.getPublicKey()),
-				new ClientInfoModel(recipient, recipientPublicKey), encryptedMessage);
+		//Send message, server knows both users by their session ids
+		ClientMessage clientMessage = new ClientMessage(chatData.getUserId(), chatData.getClientId(recipient), encryptedMessage);
 		connectionController.sendMessage(clientMessage);
 		clientWindow.addSentMessage(recipient, clientMessage.getTimeStamp(), message, false);
 	}
 
 	//
-	// Send an unencrypted message to all users.
+	// Send an unencrypted message to all users, or to members of
+	// the room the user joined last.
 	//
 	private void sendBroadcastMessage(String sender, String message)
 	{
-		BroadcastMessage broadcastMessage = new BroadcastMessage(new ClientInfoModel(sender, null), message);
+		String room = chatData.getRoom();
+		BroadcastMessage broadcastMessage = new BroadcastMessage(new ClientInfoModel(sender, null), message, room);
 		connectionController.sendMessage(broadcastMessage);
-		clientWindow.addSentMessage("all users", broadcastMessage.getTimeStamp(), message, true);
+		clientWindow.addSentMessage(room == null ? "all users" : "room " + room, broadcastMessage.getTimeStamp(), message, true);
 		clientWindow.setBroadcastCheckBoxState(false);
 	}
 
+	//
+	// Ask the server to join or leave a chat room. Returns false if
+	// the message is not a room command.
+	//
+	private boolean sendRoomCommand(String sender, String message)
+	{
+		String[] command = message.trim().split("\\s+", 2);
+		boolean join = command[0].equals("/join");
+		if(!join && !command[0].equals("/leave"))
+			return false;
+
+		String room = command.length > 1 ? command[1] : "";
+
+		//Leave the current room if no room is given
+		if(!join && room.isEmpty())
+			room = chatData.getRoom();
+
+		if(room == null || room.isEmpty()) {
+			clientWindow.setStatusMessage("Please enter a room name.");
+			return true;
+		}
+
+		connectionController.sendMessage(new RoomMessage(new ClientInfoModel(sender, null), room, join));
+		clientWindow.setStatusMessage((join ? "Joining room " : "Leaving room ") + room);
+		return true;
+	}
+
+	//
+	// Send an encrypted message to the user named in a /msg command.
+	// A user that left the chat gets it from the server when they join
+	// again with the same key. Returns false if the message is not a
+	// /msg command.
+	//
+	private boolean sendDirectCommand(String message)
+	{
+		String[] command = message.trim().split("\\s+", 3);
+		if(!command[0].equals("/msg"))
+			return false;
+
+		if(command.length < 3) {
+			clientWindow.setStatusMessage("Please enter a user name and a message.");
+			return true;
+		}
+
+		String recipient = command[1];
+		if(chatData.getClientsPublicKey(recipient) != null) {
+			sendUserMessage(recipient, command[2]);
+			clientWindow.setStatusMessage("Message sent");
+			return true;
+		}
+
+		//Encrypt message with the key the user had when they left
+		ClientInfoModel departedClient = chatData.getDepartedClient(recipient);
+		if(departedClient == null) {
+			clientWindow.setStatusMessage("User " + recipient + " is not known.");
+			return true;
+		}
+		ArrayList<BigInteger> encryptedMessage = encryptedMessageBuilder.encryptMessage(command[2], departedClient.getPublicKey());
+
+		//Server knows the user only by name and key until they join again
+		ClientMessage clientMessage = new ClientMessage(chatData.getUserId(), 0, encryptedMessage);
+		clientMessage.setOfflineRecipient(departedClient);
+		connectionController.sendMessage(clientMessage);
+		clientWindow.addSentMessage(recipient + " (offline)", clientMessage.getTimeStamp(), command[2], false);
+		clientWindow.setStatusMessage("Message will be delivered when " + recipient + " joins the chat again");
+		return true;
+	}
+
 	//
 	// This class is responsible handling the action of the user pressing
 	// the send button.
@@ -100,12 +169,17 @@ public class ClientController
 			String recipient = clientWindow.getRecipient();
 
 			//Make sure a user is selected if it is not a broadcast message
-			if(recipient == null && !clientWindow.getBroadcastCheckboxState()) {
+			//or a room command
+			if(recipient == null && !clientWindow.getBroadcastCheckboxState() && !clientWindow.isCommandEntered()) {
 				clientWindow.setStatusMessage("Please select a user to send your message to.");
 				return;
 			}
 
 			String message = clientWindow.getSendMessage();
+			String sender = chatData.getUsername();
+
+			if(sendRoomCommand(sender, message) || sendDirectCommand(message))
+				return;
 
 			//Make sure message is not blank
 			if(message.isEmpty()) {
@@ -113,13 +187,11 @@ public class ClientController
 				return;
 			}
 
-			String sender = chatData.getUsername();
-
 			//Send Message
 			if(clientWindow.getBroadcastCheckboxState())
 				sendBroadcastMessage(sender, message);
 			else
-				sendUserMessage(sender, recipient, message);
+				sendUserMessage(recipient, message);
 
 			clientWindow.setStatusMessage("Message sent");
 		}
@@ -23,12 +23,15 @@ import view.ConnectionWindow;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.concurrent.TimeoutException;
 
 
@@ -39,9 +42,14 @@ public class ConnectionController
 	private ChatData chatData;
 	private EncryptedMessageBuilder encryptedMessageBuilder;
 	private Socket socket;
-	private ObjectOutputStream out;
-	private ObjectInputStream in;
+	private DataOutputStream out;
+	private DataInputStream in;
 	private ChatClient chatClient;
+	private volatile MessageCodec messageCodec;
+	private volatile boolean compressionEnabled;
+	private final MessageHandler[] messageHandlers;
+	private boolean waitingForClientList;
+	private final ArrayList<ClientDeltaMessage> pendingDeltas;
 
 	public ConnectionController() {
 
@@ -54,6 +62,19 @@ public class ConnectionController
 		out = null;
 		in = null;
 		chatClient = null;
+		messageCodec = SocketMessageCodec.BINARY;
+		compressionEnabled = false;
+		waitingForClientList = true;
+		pendingDeltas = new ArrayList<ClientDeltaMessage>();
+
+		//Build the table of handlers for each kind of message
+		messageHandlers = new MessageHandler[MessageKind.getTagCount()];
+		registerHandler(MessageKind.HANDSHAKE, new HandshakeHandler());
+		registerHandler(MessageKind.CLIENT_UPDATE, new ClientUpdateHandler());
+		registerHandler(MessageKind.CLIENT_DELTA, new ClientDeltaHandler());
+		registerHandler(MessageKind.CLIENT_MESSAGE, new ClientMessageHandler());
+		registerHandler(MessageKind.BROADCAST, new BroadcastHandler());
+		registerHandler(MessageKind.ROOM, new RoomHandler());
 
 		//Set up connection and client windows
 		this.connectionWindow.addBtnConnectActionListener(new ConnectButton());
@@ -156,7 +177,15 @@ public class ConnectionController
 	{
 		//Check if the name the user specified is valid
 		if(message.isValidName()) {
+			//Use the message format the server agreed to
+			try {
+				messageCodec = SocketMessageCodec.forFormat(message.getWireFormat());
+			} catch (IOException e) {
+				messageCodec = SocketMessageCodec.SERIALIZED;
+			}
+			compressionEnabled = message.isCompression();
 			chatData.setUsername(message.getSenderName());
+			chatData.setUserId(message.getSenderInfo().getClientId());
 			clientWindow.setTitle("Networked Chat - " + message.getSenderName());
 			connectionSuccessful();
 		} else {
@@ -175,8 +204,18 @@ public class ConnectionController
 	{
 		ArrayList<ClientInfoModel> clientList = message.getClientList();
 
+		//Remember users that left since the last list
+		HashSet<Integer> clientIds = new HashSet<Integer>();
+		for(ClientInfoModel user : clientList)
+			clientIds.add(user.getClientId());
+		for(ClientInfoModel user : chatData.getClientList())
+			if(!clientIds.contains(user.getClientId()))
+				chatData.addDepartedClient(user);
+
 		//update model
 		chatData.setClientList(clientList);
+		chatData.setRosterVersion(message.getVersion());
+		waitingForClientList = false;
 
 		//Clear the old user list from clientWindow
 		clientWindow.clearUserList();
@@ -185,6 +224,58 @@ public class ConnectionController
 		for(ClientInfoModel user : clientList)
 			if(!user.getName().equals(chatData.getUsername()))
 				clientWindow.addUser(user.getName());
+
+		//Apply changes that arrived before the list
+		ArrayList<ClientDeltaMessage> deltas = new ArrayList<ClientDeltaMessage>(pendingDeltas);
+		pendingDeltas.clear();
+		for(ClientDeltaMessage delta : deltas)
+			handleClientDeltaMessage(delta);
+	}
+
+	//
+	// Apply one join or leave sent by the server. If a change was
+	// missed, ask the server for the whole client list instead.
+	//
+	private void handleClientDeltaMessage(ClientDeltaMessage message)
+	{
+		//Hold changes until the whole list arrives, they may be newer than it
+		if(waitingForClientList) {
+			pendingDeltas.add(message);
+			return;
+		}
+
+		//Ignore changes already in the list
+		int expectedVersion = chatData.getRosterVersion() + 1;
+		if(message.getVersion() - expectedVersion < 0)
+			return;
+
+		if(message.getVersion() != expectedVersion) {
+			waitingForClientList = true;
+			sendMessage(new ClientUpdateMessage(null, chatData.getRosterVersion()));
+			return;
+		}
+
+		//Copy the list, so it can be read while it is being changed
+		ArrayList<ClientInfoModel> clientList = new ArrayList<ClientInfoModel>(chatData.getClientList());
+		ClientInfoModel joinedClient = message.getJoinedClient();
+		if(joinedClient != null) {
+			clientList.add(joinedClient);
+			if(!joinedClient.getName().equals(chatData.getUsername()))
+				clientWindow.addUser(joinedClient.getName());
+		} else {
+			for(int i = 0; i < clientList.size(); i++) {
+				if(clientList.get(i).getClientId() == message.getLeftClientId()) {
+					ClientInfoModel leftClient = clientList.remove(i);
+					chatData.addDepartedClient(leftClient);
+					clientWindow.removeUser(leftClient.getName());
+					break;
+				}
+			}
+		}
+
+		//update model
+		chatData.setClientList(clientList);
+		chatData.setRosterVersion(message.getVersion());
 	}
 
 	//
@@ -194,8 +285,9 @@ public class ConnectionController
 	private void handleClientMessage(ClientMessage encryptedMessage)
 	{
 		String message = encryptedMessageBuilder.decryptMessage(encryptedMessage.getMessage());
-		clientWindow.addReceivedMessage(encryptedMessage.getSenderName(), encryptedMessage.getTimeStamp(), message);
-		clientWindow.setStatusMessage("Direct message received from " + encryptedMessage.getSenderName() +
+		String sender = chatData.getClientName(encryptedMessage.getSenderId());
+		clientWindow.addReceivedMessage(sender, encryptedMessage.getTimeStamp(), message);
+		clientWindow.setStatusMessage("Direct message received from " + sender +
 		" (" + encryptedMessage.getTimeStamp() + ")");
 	}
 
@@ -205,40 +297,50 @@ public class ConnectionController
 	//
 	private void handleBroadcastMessage(BroadcastMessage message)
 	{
+		String channel = message.getRoom() == null ? "broadcast" : "room " + message.getRoom();
+
 		//If the message is not from the user who sent it add it to chat window
 		if(!message.getSenderName().equals(chatData.getUsername()))
-			clientWindow.addReceivedMessage(message.getSenderName() + " (broadcast)",
+			clientWindow.addReceivedMessage(message.getSenderName() + " (" + channel + ")",
 					message.getTimeStamp(), message.getUnencryptedMessage());
 	}
 
 	//
-	// Determine the type of message received from the server and
-	// pass it along for further processing.
+	// Read the answer of the server to joining or leaving a room.
+	// Broadcasts go to the room joined last, and to all users again
+	// after the user leaves it.
 	//
-	private void processMessage(SocketMessage message)
+	private void handleRoomMessage(RoomMessage message)
 	{
-		if(message.getMessageType().equals("HandshakeMessage"))
-		{
-			HandshakeMessage connectionMessage = (HandshakeMessage)message;
-			handleConnectionMessage(connectionMessage);
-		}
-		else if(message.getMessageType().equals("ClientUpdateMessage"))
-		{
-			ClientUpdateMessage updateClientsMessage = (ClientUpdateMessage) message;
-			handleUpdateClientsMessage(updateClientsMessage);
-		}
-		else if(message.getMessageType().equals("ClientMessage"))
-		{
-			ClientMessage userMessage = (ClientMessage)message;
-			handleClientMessage(userMessage);
-		}
-		else if(message.getMessageType().equals("BroadcastMessage"))
-		{
-			BroadcastMessage broadcastMessage = (BroadcastMessage)message;
-			handleBroadcastMessage(broadcastMessage);
+		if(message.isJoined()) {
+			chatData.setRoom(message.getRoom());
+			clientWindow.setStatusMessage("Joined room " + message.getRoom() + " (" + message.getMemberCount() + " members)");
+		} else {
+			if(message.getRoom().equals(chatData.getRoom()))
+				chatData.setRoom(null);
+			clientWindow.setStatusMessage("Not a member of room " + message.getRoom());
 		}
 	}
 
+	//
+	// Set the handler used for one kind of message.
+	//
+	private void registerHandler(MessageKind kind, MessageHandler handler)
+	{
+		messageHandlers[kind.getTag()] = handler;
+	}
+
+	//
+	// Pass the message received from the server to the handler
+	// registered for its kind.
+	//
+	private void processMessage(SocketMessage message)
+	{
+		int tag = message.getMessageTag();
+		if(tag >= 0 && tag < messageHandlers.length && messageHandlers[tag] != null)
+			messageHandlers[tag].handleMessage(message);
+	}
+
 	//
 	// Update the GUIs to show that the connection was successful.
 	//
@@ -279,6 +381,7 @@ public class ConnectionController
 			System.err.println("Cannot close socket.");
 		}
 
+		chatData.setRoom(null);
 		connectionWindow.setInputState(true);
 		connectionWindow.setVisible(false);
 		clientWindow.disconnected();
@@ -287,12 +390,11 @@ public class ConnectionController
 	//
 	//Send a message to the server
 	//
-	void sendMessage(Object message)
+	synchronized void sendMessage(SocketMessage message)
 	{
 		try {
-			out.writeObject(message);
+			SocketMessageCodec.writeFrame(out, message, messageCodec, compressionEnabled);
 			out.flush();
-			out.reset();
 		} catch (IOException e) {
 			System.err.println("Cannot send message to server: " + e.toString());
 		}
@@ -343,6 +445,63 @@ public class ConnectionController
 		}
 	}
 
+	//
+	// Handlers for each kind of message received from the server.
+	//
+	class HandshakeHandler implements MessageHandler
+	{
+		@Override
+		public void handleMessage(SocketMessage message)
+		{
+			handleConnectionMessage((HandshakeMessage)message);
+		}
+	}
+
+	class ClientUpdateHandler implements MessageHandler
+	{
+		@Override
+		public void handleMessage(SocketMessage message)
+		{
+			handleUpdateClientsMessage((ClientUpdateMessage)message);
+		}
+	}
+
+	class ClientDeltaHandler implements MessageHandler
+	{
+		@Override
+		public void handleMessage(SocketMessage message)
+		{
+			handleClientDeltaMessage((ClientDeltaMessage)message);
+		}
+	}
+
+	class ClientMessageHandler implements MessageHandler
+	{
+		@Override
+		public void handleMessage(SocketMessage message)
+		{
+			handleClientMessage((ClientMessage)message);
+		}
+	}
+
+	class BroadcastHandler implements MessageHandler
+	{
+		@Override
+		public void handleMessage(SocketMessage message)
+		{
+			handleBroadcastMessage((BroadcastMessage)message);
+		}
+	}
+
+	class RoomHandler implements MessageHandler
+	{
+		@Override
+		public void handleMessage(SocketMessage message)
+		{
+			handleRoomMessage((RoomMessage)message);
+		}
+	}
+
 	//
 	// This class will run in its own thread to receive message from the server.
 	//
@@ -368,8 +527,12 @@ public class ConnectionController
 				//Connect to the server
 				try {
 					socket.connect(new InetSocketAddress(ipAddress, portNum), 5000);
-					out = new ObjectOutputStream(socket.getOutputStream());
-					in = new ObjectInputStream(socket.getInputStream());
+					out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+					in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+					messageCodec = SocketMessageCodec.BINARY;
+					compressionEnabled = false;
+					waitingForClientList = true;
+					pendingDeltas.clear();
 
 					//Send a message to the server to make sure the username is ok
 					sendMessage(new HandshakeMessage(new ClientInfoModel(connectionWindow.getUserName(),
@@ -398,8 +561,9 @@ public class ConnectionController
 		//Read a message when one arrives from the server
 		private void readMessage()
 		{
+			byte[] payload;
 			try {
-				processMessage((SocketMessage)in.readObject());
+				payload = SocketMessageCodec.readPayload(in);
 			}
 			catch (Exception ex)
 			{
@@ -407,6 +571,17 @@ public class ConnectionController
 				shouldRun = false;
 				if(socket != null)
 					disconnectFromServer();
+				return;
+			}
+
+			//The server relays direct messages without checking them, so a
+			//message that cannot be read is skipped instead of disconnecting
+			try {
+				processMessage(SocketMessageCodec.decode(payload));
+			}
+			catch (Exception ex)
+			{
+				System.err.println("Ignoring message that cannot be read: " + ex.toString());
 			}
 		}
 
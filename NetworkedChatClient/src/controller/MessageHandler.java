@@ -0,0 +1,25 @@
+/* File: MessageHandler.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is implemented by the handlers of each kind of
+ *     message received from the server. ConnectionController keeps
+ *     them in a table indexed by the message kind tag.
+ *
+ */
+
+package controller;
+
+import model.SocketMessage;
+
+interface MessageHandler
+{
+	void handleMessage(SocketMessage message);
+}
@@ -0,0 +1,463 @@
+/* File: BinaryMessageCodec.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This class is compact frame payload format. Every message is
+ *     written as message kind tag followed by fixed list of fields:
+ *     numbers and lengths are unsigned varints (7 bits per byte),
+ *     strings are UTF-8 bytes and big integers are two's complement
+ *     bytes. Lengths are stored plus one, so zero means null.
+ *     Tag is followed by 8 byte big-endian time in milliseconds, which
+ *     server overwrites in place when it receives message. Client
+ *     message has recipient and sender session ids right after time,
+ *     so server can route it without decoding rest of message.
+ *     Room of broadcast message and offline recipient of client
+ *     message are written only when they are set, so other messages
+ *     keep the same format.
+ *
+ */
+
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class BinaryMessageCodec implements MessageCodec
+{
+	// Properties:
+
+	// Offset of message time in binary payload:
+	public static final int TIME_OFFSET = 1;
+
+	// Getter methods:
+
+	@Override
+	public int getFormat()
+	{
+		return SocketMessageCodec.FORMAT_BINARY;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "binary";
+	}
+
+	// Class methods:
+
+	@Override
+	public void encode(SocketMessage data, OutputStream out) throws IOException
+	{
+		out.write(data.getMessageTag());
+		writeLong(out, data.getTimeMillis());
+		if(data.getMessageKind() == MessageKind.CLIENT_MESSAGE)
+		{
+			ClientMessage clientMessage = (ClientMessage)data;
+			writeVarInt(out, clientMessage.getRecipientId());
+			writeVarInt(out, clientMessage.getSenderId());
+			writeNumbers(out, clientMessage.getMessage());
+			if(clientMessage.getOfflineRecipient() != null)
+			{
+				writeClientInfo(out, clientMessage.getOfflineRecipient());
+			}
+			return;
+		}
+		writeClientInfo(out, data.getSenderInfo());
+
+		switch(data.getMessageKind())
+		{
+			case HANDSHAKE:
+				HandshakeMessage handshakeMessage = (HandshakeMessage)data;
+				out.write(handshakeMessage.isValidName() == true ? 1 : 0);
+				writeVarInt(out, handshakeMessage.getWireFormat());
+				out.write(handshakeMessage.isCompression() == true ? 1 : 0);
+				break;
+			case BROADCAST:
+				BroadcastMessage broadcastMessage = (BroadcastMessage)data;
+				writeString(out, broadcastMessage.getUnencryptedMessage());
+				if(broadcastMessage.getRoom() != null)
+				{
+					writeString(out, broadcastMessage.getRoom());
+				}
+				break;
+			case CLIENT_UPDATE:
+				ClientUpdateMessage updateMessage = (ClientUpdateMessage)data;
+				writeVarInt(out, updateMessage.getVersion());
+				ArrayList<ClientInfoModel> clientList = updateMessage.getClientList();
+				if(clientList == null)
+				{
+					writeVarInt(out, 0);
+					break;
+				}
+				writeVarInt(out, clientList.size() + 1);
+				for(ClientInfoModel clientInfo : clientList)
+				{
+					writeClientInfo(out, clientInfo);
+				}
+				break;
+			case CLIENT_DELTA:
+				ClientDeltaMessage deltaMessage = (ClientDeltaMessage)data;
+				writeVarInt(out, deltaMessage.getVersion());
+				writeClientInfo(out, deltaMessage.getJoinedClient());
+				writeVarInt(out, deltaMessage.getLeftClientId());
+				break;
+			case ROOM:
+				RoomMessage roomMessage = (RoomMessage)data;
+				writeString(out, roomMessage.getRoom());
+				out.write(roomMessage.isJoined() == true ? 1 : 0);
+				writeVarInt(out, roomMessage.getMemberCount());
+				break;
+			default:
+				throw new IOException("Message kind " + data.getMessageKind() + " has no binary format");
+		}
+	}
+
+	@Override
+	public SocketMessage decode(byte[] payload, int offset, int length) throws IOException
+	{
+		PayloadReader in = new PayloadReader(payload, offset, length);
+		MessageKind messageKind = MessageKind.fromTag(in.readByte());
+		if(messageKind == null)
+		{
+			throw new IOException("Unknown binary message kind");
+		}
+		long timeMillis = in.readLong();
+
+		SocketMessage data = null;
+		if(messageKind == MessageKind.CLIENT_MESSAGE)
+		{
+			int recipientId = in.readVarInt();
+			int senderId = in.readVarInt();
+			ClientMessage clientMessage = new ClientMessage(senderId, recipientId, in.readNumbers());
+			if(in.hasRemaining() == true)
+			{
+				clientMessage.setOfflineRecipient(in.readClientInfo());
+			}
+			return finishMessage(in, clientMessage, timeMillis);
+		}
+
+		ClientInfoModel sender = in.readClientInfo();
+		switch(messageKind)
+		{
+			case HANDSHAKE:
+				HandshakeMessage handshakeMessage = new HandshakeMessage(sender);
+				handshakeMessage.setValidName(in.readByte() == 1);
+				handshakeMessage.setWireFormat(in.readVarInt());
+				handshakeMessage.setCompression(in.readByte() == 1);
+				data = handshakeMessage;
+				break;
+			case BROADCAST:
+				String unencryptedMessage = in.readString();
+				data = new BroadcastMessage(sender, unencryptedMessage, in.hasRemaining() == true ? in.readString() : null);
+				break;
+			case CLIENT_UPDATE:
+				int version = in.readVarInt();
+				ArrayList<ClientInfoModel> clientList = null;
+				int count = in.readLength();
+				if(count >= 0)
+				{
+					clientList = new ArrayList<ClientInfoModel>(count);
+					for(int i = 0; i < count; i++)
+					{
+						clientList.add(in.readClientInfo());
+					}
+				}
+				data = new ClientUpdateMessage(clientList, version);
+				break;
+			case CLIENT_DELTA:
+				int deltaVersion = in.readVarInt();
+				ClientInfoModel joinedClient = in.readClientInfo();
+				data = new ClientDeltaMessage(deltaVersion, joinedClient, in.readVarInt());
+				break;
+			case ROOM:
+				String room = in.readString();
+				RoomMessage roomMessage = new RoomMessage(sender, room, in.readByte() == 1);
+				roomMessage.setMemberCount(in.readVarInt());
+				data = roomMessage;
+				break;
+			default:
+				throw new IOException("Message kind " + messageKind + " has no binary format");
+		}
+		return finishMessage(in, data, timeMillis);
+	}
+
+	private static SocketMessage finishMessage(PayloadReader in, SocketMessage data, long timeMillis) throws IOException
+	{
+		if(in.hasRemaining() == true)
+		{
+			throw new IOException("Unexpected bytes after binary message");
+		}
+		data.setTimeMillis(timeMillis);
+		return data;
+	}
+
+	// Returns recipient id of binary client message payload, or
+	// 0 if payload is some other message:
+
+	public static int readRecipientId(byte[] payload, int offset, int length) throws IOException
+	{
+		PayloadReader in = new PayloadReader(payload, offset, length);
+		if(in.readByte() != MessageKind.CLIENT_MESSAGE.getTag())
+		{
+			return 0;
+		}
+		in.readLong();
+		return in.readVarInt();
+	}
+
+	// Returns sender id of binary client message payload:
+
+	public static int readSenderId(byte[] payload, int offset, int length) throws IOException
+	{
+		PayloadReader in = new PayloadReader(payload, offset + TIME_OFFSET + 8, length - TIME_OFFSET - 8);
+		in.readVarInt();
+		return in.readVarInt();
+	}
+
+	// Overwrite message time of binary payload:
+
+	public static void putTimeMillis(byte[] payload, int offset, long timeMillis)
+	{
+		for(int i = 7; i >= 0; i--)
+		{
+			payload[offset + TIME_OFFSET + i] = (byte)timeMillis;
+			timeMillis >>>= 8;
+		}
+	}
+
+	private static void writeClientInfo(OutputStream out, ClientInfoModel clientInfo) throws IOException
+	{
+		if(clientInfo == null)
+		{
+			out.write(0);
+			return;
+		}
+		out.write(1);
+		writeVarInt(out, clientInfo.getClientId());
+		writeString(out, clientInfo.getName());
+		writePublicKey(out, clientInfo.getPublicKey());
+	}
+
+	private static void writePublicKey(OutputStream out, PublicRSAKey publicKey) throws IOException
+	{
+		if(publicKey == null)
+		{
+			out.write(0);
+			return;
+		}
+		out.write(1);
+		writeNumber(out, publicKey.getN());
+		writeNumber(out, publicKey.getE());
+	}
+
+	private static void writeNumbers(OutputStream out, ArrayList<BigInteger> numbers) throws IOException
+	{
+		if(numbers == null)
+		{
+			writeVarInt(out, 0);
+			return;
+		}
+		writeVarInt(out, numbers.size() + 1);
+		for(BigInteger number : numbers)
+		{
+			writeNumber(out, number);
+		}
+	}
+
+	private static void writeNumber(OutputStream out, BigInteger number) throws IOException
+	{
+		writeBytes(out, number == null ? null : number.toByteArray());
+	}
+
+	private static void writeString(OutputStream out, String value) throws IOException
+	{
+		writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void writeBytes(OutputStream out, byte[] value) throws IOException
+	{
+		if(value == null)
+		{
+			writeVarInt(out, 0);
+			return;
+		}
+		writeVarInt(out, value.length + 1);
+		out.write(value);
+	}
+
+	private static void writeLong(OutputStream out, long value) throws IOException
+	{
+		for(int shift = 56; shift >= 0; shift -= 8)
+		{
+			out.write((int)(value >>> shift));
+		}
+	}
+
+	private static void writeVarInt(OutputStream out, int value) throws IOException
+	{
+		while((value & ~0x7F) != 0)
+		{
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	// Inner classes:
+
+	// Reads fields from frame payload in place and checks every length
+	// against remaining bytes, so corrupted frame cannot make decoder
+	// allocate more than frame itself:
+
+	static class PayloadReader
+	{
+		private byte[] payload = null;
+		private int position = 0;
+		private int limit = 0;
+
+		public PayloadReader(byte[] payload, int offset, int length)
+		{
+			this.payload = payload;
+			this.position = offset;
+			this.limit = offset + length;
+		}
+
+		public boolean hasRemaining()
+		{
+			return this.position < this.limit;
+		}
+
+		public int readByte() throws IOException
+		{
+			if(this.position >= this.limit)
+			{
+				throw new EOFException("Truncated binary message");
+			}
+			return this.payload[this.position++] & 0xFF;
+		}
+
+		public long readLong() throws IOException
+		{
+			long value = 0;
+			for(int i = 0; i < 8; i++)
+			{
+				value = (value << 8) | this.readByte();
+			}
+			return value;
+		}
+
+		public int readVarInt() throws IOException
+		{
+			int value = 0;
+			for(int shift = 0; shift < 35; shift += 7)
+			{
+				int next = this.readByte();
+				value |= (next & 0x7F) << shift;
+				if((next & 0x80) == 0)
+				{
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint in binary message");
+		}
+
+		// Returns -1 for null value:
+
+		public int readLength() throws IOException
+		{
+			int length = this.readVarInt() - 1;
+			if(length < -1 || length > this.limit - this.position)
+			{
+				throw new EOFException("Truncated binary message");
+			}
+			return length;
+		}
+
+		public byte[] readBytes() throws IOException
+		{
+			int length = this.readLength();
+			if(length < 0)
+			{
+				return null;
+			}
+			byte[] value = new byte[length];
+			System.arraycopy(this.payload, this.position, value, 0, length);
+			this.position += length;
+			return value;
+		}
+
+		public String readString() throws IOException
+		{
+			int length = this.readLength();
+			if(length < 0)
+			{
+				return null;
+			}
+			String value = new String(this.payload, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return value;
+		}
+
+		public BigInteger readNumber() throws IOException
+		{
+			byte[] value = this.readBytes();
+			if(value == null)
+			{
+				return null;
+			}
+			if(value.length == 0)
+			{
+				return BigInteger.ZERO;
+			}
+			return new BigInteger(value);
+		}
+
+		public ArrayList<BigInteger> readNumbers() throws IOException
+		{
+			int count = this.readLength();
+			if(count < 0)
+			{
+				return null;
+			}
+			ArrayList<BigInteger> numbers = new ArrayList<BigInteger>(count);
+			for(int i = 0; i < count; i++)
+			{
+				numbers.add(this.readNumber());
+			}
+			return numbers;
+		}
+
+		public ClientInfoModel readClientInfo() throws IOException
+		{
+			if(this.readByte() == 0)
+			{
+				return null;
+			}
+			int clientId = this.readVarInt();
+			String name = this.readString();
+			ClientInfoModel clientInfo = new ClientInfoModel(name, this.readPublicKey());
+			clientInfo.setClientId(clientId);
+			return clientInfo;
+		}
+
+		public PublicRSAKey readPublicKey() throws IOException
+		{
+			if(this.readByte() == 0)
+			{
+				return null;
+			}
+			return new PublicRSAKey(this.readNumber(), this.readNumber());
+		}
+	}
+}
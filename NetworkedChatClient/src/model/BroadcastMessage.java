@@ -10,7 +10,8 @@
  * 
  * Class description:
  *    This class is concrete class from SocketMessage class, and 
- *    used as unencrypted message for all connected clients.
+ *    used as unencrypted message for all connected clients, or
+ *    for members of one chat room.
  * 
  */
 
@@ -22,20 +23,36 @@ public class BroadcastMessage extends SocketMessage
 	// Properties:
 	
 	private String unencryptedMessage = null;
+	private String room = null;
 	
 	
 	// Default constructor:
 	public BroadcastMessage(ClientInfoModel sender, String unencryptedMessage)
 	{
-		super(sender, "BroadcastMessage");
+		super(sender, MessageKind.BROADCAST);
 		this.unencryptedMessage = unencryptedMessage;
 	}
 	
+	// Message for members of one room:
+	
+	public BroadcastMessage(ClientInfoModel sender, String unencryptedMessage, String room)
+	{
+		this(sender, unencryptedMessage);
+		this.room = room;
+	}
+	
 	// Getters:
 	
 	public String getUnencryptedMessage() 
 	{
 		return this.unencryptedMessage;
 	}
+	
+	// Returns null if message is for all connected clients:
+	
+	public String getRoom()
+	{
+		return this.room;
+	}
 
 }
@@ -16,18 +16,24 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 public class ChatData
 {
 	private static ChatData chatDataInstance = null;
 	private ArrayList<ClientInfoModel> clientList;
+	private HashMap<String, ClientInfoModel> departedClients;
 	private ClientInfoModel clientInfo = null;
 	private String username;
+	private int userId = 0;
+	private int rosterVersion = 0;
+	private String room = null;
 
 	// private constructor to implement Singleton Pattern
 	private ChatData()
 	{
 		clientList = new ArrayList<ClientInfoModel>();
+		departedClients = new HashMap<String, ClientInfoModel>();
 		username = "Unknown";
 	}
 
@@ -70,6 +76,31 @@ public class ChatData
 		return username;
 	}
 
+	//
+	// Return the session id the server assigned to this client.
+	//
+	public int getUserId()
+	{
+		return userId;
+	}
+
+	//
+	// Return the version of the client list sent by the server.
+	//
+	public int getRosterVersion()
+	{
+		return rosterVersion;
+	}
+
+	//
+	// Return the chat room broadcasts are sent to, or null if
+	// they are sent to all users.
+	//
+	public String getRoom()
+	{
+		return room;
+	}
+
 	//
 	// Return the public key of the specified user.
 	//
@@ -83,6 +114,46 @@ public class ChatData
 		return null; //Client not in client list
 	}
 
+	//
+	// Return the session id of the specified user.
+	//
+	public int getClientId(String client)
+	{
+		for(ClientInfoModel user : clientList)
+			if(user.getName().equals(client))
+				return user.getClientId();
+
+		return 0; //Client not in client list
+	}
+
+	//
+	// Return the last known name, session id and public key of a user
+	// that left the chat, or null if the user was never seen.
+	//
+	public synchronized ClientInfoModel getDepartedClient(String client)
+	{
+		return departedClients.get(client);
+	}
+
+	//
+	// Return the name of the user with the specified session id.
+	//
+	public String getClientName(int clientId)
+	{
+		for(ClientInfoModel user : clientList)
+			if(user.getClientId() == clientId)
+				return user.getName();
+
+		//Sender of a stored message may have left the chat as well
+		synchronized(this) {
+			for(ClientInfoModel user : departedClients.values())
+				if(user.getClientId() == clientId)
+					return user.getName();
+		}
+
+		return "Unknown"; //Client not in client list
+	}
+
 	//
 	// Setter functions for data members
 	//
@@ -93,7 +164,23 @@ public class ChatData
 	public void setUsername(String username) {
 		this.username = username;
 	}
+
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+
+	public void setRosterVersion(int rosterVersion) {
+		this.rosterVersion = rosterVersion;
+	}
+
+	public void setRoom(String room) {
+		this.room = room;
+	}
 	
+	public synchronized void addDepartedClient(ClientInfoModel clientInfo) {
+		departedClients.put(clientInfo.getName(), clientInfo);
+	}
+
 	public void setClientInfo(String username, PublicRSAKey publicRSAKey) {
 		this.clientInfo = new ClientInfoModel(username, publicRSAKey);
 	}
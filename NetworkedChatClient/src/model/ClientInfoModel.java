@@ -12,7 +12,9 @@
  *    This class is container for client information,
  *    such as name and public RSA key pair. With this class every client
  *    can be stored in any array like container and used for encrypting and 
- *    sending messages.
+ *    sending messages. Server assigns every client session id at
+ *    handshake, and client messages carry only ids of their sender
+ *    and recipient.
  * 
  */
 
@@ -26,6 +28,7 @@ public class ClientInfoModel implements Serializable
 	
     private String name;
     private PublicRSAKey publicKey;
+    private int clientId = 0;
 
     // Default constructor:
     
@@ -46,6 +49,20 @@ public class ClientInfoModel implements Serializable
     {
         return publicKey;
     }
+    
+    // Session id, 0 until server accepts client:
+    
+    public int getClientId()
+    {
+        return clientId;
+    }
+    
+    // Setter methods:
+    
+    public void setClientId(int clientId)
+    {
+        this.clientId = clientId;
+    }
 
 }
 
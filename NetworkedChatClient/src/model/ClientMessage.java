@@ -10,7 +10,11 @@
  * 
  * Class description:
  *    This class is concrete class from SocketMessage class, and 
- *    used send encrypted messages between clients.
+ *    used send encrypted messages between clients. Sender and
+ *    recipient are session ids assigned by server, recipients look
+ *    up name of sender in their client list. Message for user that
+ *    is not connected has recipient id 0 and names the user and its
+ *    last known public key instead, so server can keep it.
  * 
  */
 
@@ -23,26 +27,50 @@ public class ClientMessage extends SocketMessage
 {
 	// Properties:
 	
-    private ClientInfoModel recipient;
+	// Offline recipient was added later, id is kept so clients
+	// without it can still exchange serialized messages:
+	private static final long serialVersionUID = -3404614911519140976L;
+	
+    private int senderId;
+    private int recipientId;
     private ArrayList<BigInteger> message;
+    private ClientInfoModel offlineRecipient = null;
 
     // Default constructor:
-    public ClientMessage(ClientInfoModel sender, ClientInfoModel recipient, ArrayList<BigInteger> message)
+    public ClientMessage(int senderId, int recipientId, ArrayList<BigInteger> message)
     {
-        super(sender, "ClientMessage");
-        this.recipient = recipient;
+        super(null, MessageKind.CLIENT_MESSAGE);
+        this.senderId = senderId;
+        this.recipientId = recipientId;
         this.message = message;
     }
 
     // Getter methods:
-    public String getRecipientName()
+    public int getSenderId()
     {
-        return this.recipient.getName();
+        return this.senderId;
+    }
+
+    public int getRecipientId()
+    {
+        return this.recipientId;
     }
 
     public ArrayList<BigInteger> getMessage()
     {
         return this.message;
     }
+    
+    // Returns null if message is sent to connected client:
+    
+    public ClientInfoModel getOfflineRecipient()
+    {
+        return this.offlineRecipient;
+    }
+
+    public void setOfflineRecipient(ClientInfoModel offlineRecipient)
+    {
+        this.offlineRecipient = offlineRecipient;
+    }
 
 }
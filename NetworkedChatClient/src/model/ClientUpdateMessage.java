@@ -11,6 +11,10 @@
  * Class description:
  *    This class is concrete class from SocketMessage class, and 
  *    used to update connected client list for every client.
+ *    Server sends whole list once after handshake, and later only
+ *    ClientDeltaMessage for every join and leave. Version is the
+ *    roster version list belongs to. Client sends this message
+ *    without list to ask server for whole list again.
  * 
  */
 
@@ -23,13 +27,15 @@ public class ClientUpdateMessage extends SocketMessage
 	// Properties:
 	
     private ArrayList<ClientInfoModel> clientList = null;
+    private int version = 0;
 
     // Default constructor:
     
-    public ClientUpdateMessage(ArrayList<ClientInfoModel> clientList)
+    public ClientUpdateMessage(ArrayList<ClientInfoModel> clientList, int version)
     {
-    		super(null, "ClientUpdateMessage");
+    		super(null, MessageKind.CLIENT_UPDATE);
         this.clientList = clientList;
+        this.version = version;
     }
 
     // Getter methods:
@@ -39,4 +45,9 @@ public class ClientUpdateMessage extends SocketMessage
         return clientList;
     }
 
+    public int getVersion()
+    {
+        return version;
+    }
+
 }
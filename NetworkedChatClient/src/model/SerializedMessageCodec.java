@@ -0,0 +1,65 @@
+/* File: SerializedMessageCodec.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This class is frame payload format that uses Java
+ *     serialization. It is kept for clients that did not ask for
+ *     binary format and for servers configured to use it.
+ *
+ */
+
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+public class SerializedMessageCodec implements MessageCodec
+{
+	// Getter methods:
+
+	@Override
+	public int getFormat()
+	{
+		return SocketMessageCodec.FORMAT_SERIALIZED;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "serialized";
+	}
+
+	// Class methods:
+
+	@Override
+	public void encode(SocketMessage data, OutputStream out) throws IOException
+	{
+		ObjectOutputStream objectOut = new ObjectOutputStream(out);
+		objectOut.writeObject(data);
+		objectOut.flush();
+	}
+
+	@Override
+	public SocketMessage decode(byte[] payload, int offset, int length) throws IOException
+	{
+		ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(payload, offset, length));
+		try
+		{
+			return (SocketMessage)objectIn.readObject();
+		}
+		catch (ClassNotFoundException | ClassCastException e)
+		{
+			throw new IOException("Unknown message in frame > " + e.getMessage());
+		}
+	}
+}
@@ -17,26 +17,33 @@
 package model;
 
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 public abstract class SocketMessage implements Serializable
 {
 	// Properties: 
 	
+	// Fixed, so server-only constructors do not break
+	// serialized format shared with client:
+	private static final long serialVersionUID = 1L;
+	
 	private ClientInfoModel sender = null;
-	private String messageType = null;
-	private String timeStamp = null;
+	private byte messageTag = 0;
+	private long timeMillis = 0;
+	
+	// Formatter is thread-safe, so one instance formats time stamps
+	// of all messages when they are displayed:
+	private static final DateTimeFormatter TIME_STAMP_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss").withZone(ZoneId.systemDefault());
 	
 	// Default constructor:
 	
-	public SocketMessage(ClientInfoModel sender, String messageType)
+	public SocketMessage(ClientInfoModel sender, MessageKind messageKind)
 	{
 		this.sender = sender;
-		this.messageType = messageType;
-		
-		SimpleDateFormat dateAndTime = new SimpleDateFormat ("MM/dd/yyyy hh:mm:ss");
-		this.timeStamp = dateAndTime.format(new Date());
+		this.messageTag = (byte)messageKind.getTag();
+		this.timeMillis = System.currentTimeMillis();
 	}
 	
 	// Getter methods:
@@ -51,8 +58,14 @@ public abstract class SocketMessage implements Serializable
 		return this.sender.getName();
 	}
 	
-	public String getMessageType() {
-		return this.messageType;
+	public MessageKind getMessageKind() {
+		return MessageKind.fromTag(this.messageTag);
+	}
+	
+	// Tag of message kind, used as index into handler tables:
+	
+	public int getMessageTag() {
+		return this.messageTag;
 	}
 	
 	public PublicRSAKey getSenderPublicKey() {
@@ -61,7 +74,23 @@ public abstract class SocketMessage implements Serializable
 	
 	public String getTimeStamp()
 	{
-		return this.timeStamp;
+		return TIME_STAMP_FORMAT.format(Instant.ofEpochMilli(this.timeMillis));
+	}
+	
+	// Milliseconds since epoch, set by server when message is received:
+	
+	public long getTimeMillis()
+	{
+		return this.timeMillis;
+	}
+	
+	// Setter  methods:
+	
+	// Used by message codecs to keep time stamp of decoded message:
+	
+	void setTimeMillis(long timeMillis)
+	{
+		this.timeMillis = timeMillis;
 	}
 
 }
@@ -0,0 +1,113 @@
+/* File: SocketMessageCodec.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This class converts socket messages to length prefixed frames
+ *     and back. Every frame is 4 byte big-endian payload length followed
+ *     by payload, which is the framing the server expects. First payload
+ *     byte tells which MessageCodec encoded rest of it, and if rest of
+ *     it is compressed by FrameCompressor.
+ *
+ */
+
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public final class SocketMessageCodec
+{
+	public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	public static final int FORMAT_SERIALIZED = 0;
+	public static final int FORMAT_BINARY = 1;
+
+	public static final MessageCodec SERIALIZED = new SerializedMessageCodec();
+	public static final MessageCodec BINARY = new BinaryMessageCodec();
+
+	private SocketMessageCodec()
+	{
+	}
+
+	//
+	// Find the codec for a format byte received from the server.
+	//
+	public static MessageCodec forFormat(int format) throws IOException
+	{
+		if(format == FORMAT_SERIALIZED)
+			return SERIALIZED;
+		if(format == FORMAT_BINARY)
+			return BINARY;
+		throw new IOException("Unknown message format " + format);
+	}
+
+	//
+	// Encode the message with the given codec and write it as one frame.
+	// Large payloads are compressed when the server agreed to it, except
+	// encrypted client messages, which do not compress and which the
+	// server relays without reading them.
+	//
+	public static void writeFrame(DataOutputStream out, SocketMessage message, MessageCodec codec, boolean compress) throws IOException
+	{
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+		codec.encode(message, payload);
+
+		byte[] compressed = null;
+		if(compress && message.getMessageKind() != MessageKind.CLIENT_MESSAGE
+				&& payload.size() >= FrameCompressor.COMPRESSION_THRESHOLD)
+			compressed = FrameCompressor.compress(payload.toByteArray(), 0, payload.size());
+
+		if(compressed != null) {
+			out.writeInt(1 + compressed.length);
+			out.write(codec.getFormat() | FrameCompressor.COMPRESSED_FLAG);
+			out.write(compressed);
+		} else {
+			out.writeInt(1 + payload.size());
+			out.write(codec.getFormat());
+			payload.writeTo(out);
+		}
+	}
+
+	//
+	// Read one frame and decode the message it contains.
+	//
+	public static SocketMessage readFrame(DataInputStream in) throws IOException
+	{
+		return decode(readPayload(in));
+	}
+
+	//
+	// Read the payload of one frame without decoding it.
+	//
+	public static byte[] readPayload(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if(length <= 0 || length > MAX_FRAME_LENGTH)
+			throw new IOException("Invalid frame length " + length);
+
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return payload;
+	}
+
+	//
+	// Decode the message in a frame payload.
+	//
+	public static SocketMessage decode(byte[] payload) throws IOException
+	{
+		if(FrameCompressor.isCompressed(payload[0])) {
+			byte[] uncompressed = FrameCompressor.decompress(payload, 1, payload.length - 1);
+			return forFormat(FrameCompressor.getMessageFormat(payload[0])).decode(uncompressed, 0, uncompressed.length);
+		}
+		return forFormat(payload[0]).decode(payload, 1, payload.length - 1);
+	}
+}
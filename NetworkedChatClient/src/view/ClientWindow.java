@@ -114,6 +114,14 @@ public class ClientWindow  extends JFrame
 		return message;
 	}
 
+	//
+	// Returns true if the text entered by the user is a command.
+	//
+	public boolean isCommandEntered()
+	{
+		return this.txfldSendMessage.getText().trim().startsWith("/");
+	}
+
 	//
 	// Returns name of the client the user current has selected in the user list.
 	//
@@ -209,6 +217,14 @@ public class ClientWindow  extends JFrame
 		userListModel.addElement(user);
 	}
 
+	//
+	// Remove a user from the user list.
+	//
+	public void removeUser(String user)
+	{
+		userListModel.removeElement(user);
+	}
+
 	//
 	// Add a received message to the message window.  This includes the sender
 	// and a time stamp.
@@ -9,16 +9,75 @@
  *     12/07/2017
  * 
  * Class description:
- *    This class is used to run server application.
+ *    This class is used to run server application. With --headless=true
+ *    server starts immediately on configured port without any window
+ *    and prints its status to console. In both modes server is shut
+ *    down by shutdown hook when process exits.
  * 
  */
 
+import java.util.concurrent.CountDownLatch;
+
 import controller.ServerController;
+import model.ServerConfig;
+import view.ConsoleStatusSink;
+import view.ServerWindow;
 
 public class NetworkedChatServer 
 {	
     public static void  main(String[] args)
     {
-        ServerController server = new ServerController();
+        ServerConfig config = ServerConfig.fromArguments(args);
+        
+        if(config.isHeadless() == true)
+        {
+            ConsoleStatusSink console = new ConsoleStatusSink(System.out);
+            final ServerController server = new ServerController(config, console);
+            server.getServerLog().addSink(console);
+            if(server.startServer(config.getPort()) == false)
+            {
+                System.exit(1);
+            }
+            final CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    server.shutdown();
+                    stopped.countDown();
+                }
+            });
+            
+            // Client threads may be daemon threads (virtual threads are),
+            // so main thread keeps server process alive:
+            try
+            {
+                stopped.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        else
+        {
+            ServerWindow serverWindow = ServerWindow.getInstance();
+            serverWindow.setLogCapacity(config.getLogViewCapacity());
+            final ServerController server = new ServerController(config, serverWindow);
+            server.getServerLog().addSink(serverWindow);
+            server.initializeWindow(serverWindow);
+            
+            // Window and menu exit with System.exit, which runs this
+            // hook:
+            Runtime.getRuntime().addShutdownHook(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    server.shutdown();
+                }
+            });
+        }
     }
 }
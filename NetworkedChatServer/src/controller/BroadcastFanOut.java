@@ -0,0 +1,141 @@
+/* File: BroadcastFanOut.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class queues one frame for every client. Small audience
+ *    is served by calling thread, large one is split into stripes of
+ *    clients that fan-out pool queues in parallel. Stripe size grows
+ *    with audience, so every pool thread gets a few stripes to balance
+ *    work, but never drops below minimum stripe size. Calling thread
+ *    waits until all stripes are done, so two broadcasts from one
+ *    thread reach every client in the order they were sent.
+ *
+ */
+
+package controller;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import model.ClientModel;
+import model.Frame;
+
+public class BroadcastFanOut
+{
+	// Properties:
+
+	private static final int STRIPES_PER_THREAD = 4;
+
+	private ForkJoinPool fanOutPool = null;
+	private int minStripeSize = 0;
+
+	// Default constructor:
+
+	public BroadcastFanOut(int threads, int minStripeSize)
+	{
+		this.minStripeSize = minStripeSize;
+		if(threads > 1)
+		{
+			this.fanOutPool = new ForkJoinPool(threads, new FanOutThreadFactory(), null, false);
+		}
+	}
+
+	// Class methods:
+
+	// Queue frame for all clients. Lagging clients get lagging frame
+	// instead when it is not null:
+
+	public void send(ClientModel[] clients, Frame frame, Frame laggingFrame)
+	{
+		int stripeSize = this.getStripeSize(clients.length);
+		if(this.fanOutPool == null || clients.length <= stripeSize)
+		{
+			sendStripe(clients, 0, clients.length, frame, laggingFrame);
+			return;
+		}
+		this.fanOutPool.invoke(new FanOutTask(clients, 0, clients.length, stripeSize, frame, laggingFrame));
+	}
+
+	private int getStripeSize(int audience)
+	{
+		if(this.fanOutPool == null)
+		{
+			return audience;
+		}
+		int stripes = this.fanOutPool.getParallelism() * STRIPES_PER_THREAD;
+		return Math.max(this.minStripeSize, (audience + stripes - 1) / stripes);
+	}
+
+	private static void sendStripe(ClientModel[] clients, int from, int to, Frame frame, Frame laggingFrame)
+	{
+		for(int i = from; i < to; i++)
+		{
+			if(laggingFrame != null && clients[i].isLagging() == true)
+			{
+				clients[i].sendFrame(laggingFrame);
+			}
+			else
+			{
+				clients[i].updateObserver(frame);
+			}
+		}
+	}
+
+	// Inner classes:
+
+	// Range of clients is halved until it fits into one stripe:
+
+	static class FanOutTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private ClientModel[] clients = null;
+		private int from = 0;
+		private int to = 0;
+		private int stripeSize = 0;
+		private Frame frame = null;
+		private Frame laggingFrame = null;
+
+		public FanOutTask(ClientModel[] clients, int from, int to, int stripeSize, Frame frame, Frame laggingFrame)
+		{
+			this.clients = clients;
+			this.from = from;
+			this.to = to;
+			this.stripeSize = stripeSize;
+			this.frame = frame;
+			this.laggingFrame = laggingFrame;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(this.to - this.from <= this.stripeSize)
+			{
+				sendStripe(this.clients, this.from, this.to, this.frame, this.laggingFrame);
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new FanOutTask(this.clients, this.from, middle, this.stripeSize, this.frame, this.laggingFrame),
+					new FanOutTask(this.clients, middle, this.to, this.stripeSize, this.frame, this.laggingFrame));
+		}
+	}
+
+	static class FanOutThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory
+	{
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+		{
+			ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+			thread.setName("FanOut-" + thread.getPoolIndex());
+			return thread;
+		}
+	}
+}
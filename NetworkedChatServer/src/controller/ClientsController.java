@@ -11,98 +11,230 @@
  * Class description:
  *    This class is server controller that helps server 
  *    create, and manage new threads (clients connections). Also
- *    it is used in as subject in observer pattern.
+ *    it is used in as subject in observer pattern. Client list is
+ *    versioned: new client gets whole list once, and then every
+ *    client gets only joins and leaves with next version number.
+ *    Current list is immutable snapshot that is replaced on every
+ *    change, so it is read and sent without locking. Clients that
+ *    fall behind are reported and handled by slow consumer policy.
+ *    Messages to all clients are queued by broadcast fan-out, which
+ *    splits large audience between several threads. Broadcast for
+ *    chat room goes only to members of that room, which are found
+ *    in room index. In cluster, clients of other nodes are part of
+ *    client list too, and messages for them are passed to cluster.
+ *    Message for client that left, sent to its old session id or to
+ *    its name and last known key, is kept in offline store and sent
+ *    when client joins again with the same name and key.
  * 
  */
 
 package controller;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Vector;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import model.BroadcastMessage;
+import model.ClientDeltaMessage;
 import model.ClientModel;
+import model.ClientRegistry;
+import model.Frame;
+import model.MessageKind;
+import model.OfflineMessageStore;
+import model.PublicRSAKey;
+import model.RelayMessage;
+import model.RoomIndex;
+import model.RoomMessage;
+import model.RosterSnapshot;
 import model.ServerObserver;
+import model.ServerStatusSink;
 import model.ServerSubject;
+import model.SlowConsumerListener;
+import model.SlowConsumerPolicy;
 import model.SocketMessage;
-import model.ClientUpdateMessage;
 import model.ClientInfoModel;
 import model.ClientMessage;
-import view.ServerWindow;
 
 public class ClientsController implements ServerSubject
 {
 	
 	// Models:
+	private ServerStatusSink statusSink = null;
 	
 	// Views:
-	private ServerWindow serverWindow = null;
 	
 	// Controllers:
+	private ServerLogController serverLog = null;
+	private ServerLogController.Sampler forwardLog = null;
+	private ServerLogController.Sampler broadcastLog = null;
+	private ServerLogController.Sampler updateLog = null;
 	
 	// Properties:
 	
-	private ArrayList<ClientInfoModel> activeUserList = new ArrayList<ClientInfoModel>();
-	private Map<String, ClientModel> connectedClients = null;
-	private Vector<ClientModel> syncedClients = null;
+	private final AtomicReference<RosterSnapshot> roster = new AtomicReference<RosterSnapshot>(new RosterSnapshot());
+	private ClientRegistry registry = null;
+	
+	// Roster changes are made one at a time, so deltas are sent
+	// in version order. Lock is held during fan-out, so it must not
+	// pin virtual thread to its carrier like monitor does:
+	private final ReentrantLock rosterLock = new ReentrantLock();
 	private ClientInfoModel serverInfo = null;
+	private ExecutorService clientExecutor = null;
+	private SlowConsumerPolicy slowConsumerPolicy = null;
+	private BroadcastFanOut fanOut = null;
+	private RoomIndex rooms = null;
+	private DirectMessageRouter messageRouter = null;
+	private ClusterController cluster = null;
+	private OfflineMessageStore offlineStore = null;
+	private final SlowConsumerListener slowConsumerHandler = new SlowConsumerHandler();
+	private final MessageHandler[] messageHandlers = new MessageHandler[MessageKind.getTagCount()];
 	
 	// Default Constructor:
 	
-	public ClientsController()
+	public ClientsController(ExecutorService clientExecutor, ClientRegistry registry, BroadcastFanOut fanOut, RoomIndex rooms, SlowConsumerPolicy slowConsumerPolicy, ServerStatusSink statusSink, ServerLogController serverLog)
 	{
-		this.serverWindow = ServerWindow.getInstance();
-		this.connectedClients = new HashMap<String, ClientModel>();
-		this.syncedClients = new Vector<ClientModel>();
+		this.clientExecutor = clientExecutor;
+		this.registry = registry;
+		this.fanOut = fanOut;
+		this.rooms = rooms;
+		this.slowConsumerPolicy = slowConsumerPolicy;
+		this.statusSink = statusSink;
+		this.serverLog = serverLog;
+		this.forwardLog = serverLog.createSampler("forwarded messages");
+		this.broadcastLog = serverLog.createSampler("forwarded broadcast messages");
+		this.updateLog = serverLog.createSampler("client updates");
 		this.serverInfo = new ClientInfoModel("Server", null);
-
+		
+		this.registerHandler(MessageKind.CLIENT_MESSAGE, new ForwardClientMessage());
+		this.registerHandler(MessageKind.BROADCAST, new ForwardBroadcastMessage());
+		this.registerHandler(MessageKind.CLIENT_UPDATE, new SendClientList());
+		this.registerHandler(MessageKind.ROOM, new ChangeRoomMembership());
 	}
 	
 	// Getter methods:
 	
 	public ClientModel getClientByName(String username)
 	{
-		return this.connectedClients.get(username);
+		return this.registry.getClient(username);
+	}
+	
+	// Returns null if no client has this session id:
+	
+	public ClientModel getClientById(int clientId)
+	{
+		return this.registry.getClient(clientId);
 	}
 	
-	public boolean isUsernameValid(String username)
+	// Clients of this server that joined chat:
+	
+	public ClientModel[] getClients()
 	{
-		return !this.connectedClients.containsKey(username);
+		return this.registry.getClients();
 	}
 	
-	public ArrayList<ClientInfoModel> getActiveUserList()
+	public RosterSnapshot getRoster()
 	{
-		return this.activeUserList;
+		return this.roster.get();
 	}
 	
 	// Setter methods:
 	
+	public void registerHandler(MessageKind messageKind, MessageHandler messageHandler)
+	{
+		this.messageHandlers[messageKind.getTag()] = messageHandler;
+	}
+	
+	// Direct messages are passed to router first, and only messages
+	// it does not take are delivered by thread that received them:
+	
+	public void setMessageRouter(DirectMessageRouter messageRouter)
+	{
+		this.messageRouter = messageRouter;
+	}
+	
+	public void setCluster(ClusterController cluster)
+	{
+		this.cluster = cluster;
+	}
+	
+	public void setOfflineStore(OfflineMessageStore offlineStore)
+	{
+		this.offlineStore = offlineStore;
+	}
 
 	// Class methods:
 	
+	// Reserve name for client in handshake. Returns false if
+	// name is taken, check and reservation are one atomic step:
+	
+	public boolean reserveUsername(String username, ClientModel client)
+	{
+		if(this.registry.reserveName(username, client) == false)
+		{
+			return false;
+		}
+		
+		// Name has to be free in whole cluster too:
+		
+		if(this.cluster != null && this.cluster.reserveName(username) == false)
+		{
+			this.registry.releaseName(username, client);
+			return false;
+		}
+		return true;
+	}
+	
+	// Assign session id to accepted client, so it can be sent
+	// in handshake reply before client is added to chat:
+	
+	public int assignClientId(ClientModel client)
+	{
+		return this.registry.assignClientId(client);
+	}
+	
+	// Clients that fall behind are marked, so operator can see
+	// who is lagging:
+	
 	public void updateServerClientList()
 	{
-		this.serverWindow.clearUserList();
-		for(ClientInfoModel user : activeUserList)
+		List<String> clientNames = new ArrayList<String>();
+		for(ClientInfoModel user : this.roster.get().getClients())
 		{
-			this.serverWindow.addUser(user.getName());
+			ClientModel client = this.registry.getClient(user.getName());
+			if(client != null && client.isLagging() == true)
+			{
+				clientNames.add(user.getName() + " (lagging)");
+			}
+			else
+			{
+				clientNames.add(user.getName());
+			}
 		}
-		this.serverWindow.setConnectedClient(Integer.toString(activeUserList.size()));
+		this.statusSink.setClientList(clientNames);
 	}
 	
 	public void closeAllConnections()
 	{
 		this.updateObservers(new BroadcastMessage(this.serverInfo, "You have been disconnected from server due to server shut down."));
-		for(ClientModel client : syncedClients)
+		for(ClientModel client : this.registry.getClients())
 		{
 			client.closeSocket();
 		}
-		this.activeUserList.clear();
-		this.connectedClients.clear();
-		this.syncedClients.clear();
-		this.serverWindow.clearUserList();
+		this.rosterLock.lock();
+		try
+		{
+			this.registry.clear();
+			this.rooms.clear();
+			this.roster.set(new RosterSnapshot());
+		}
+		finally
+		{
+			this.rosterLock.unlock();
+		}
+		this.statusSink.setClientList(new ArrayList<String>());
 	}
 	
 	public void newClientNotification(String clientName)
@@ -110,48 +242,494 @@ public class ClientsController implements ServerSubject
 		this.updateObservers(new BroadcastMessage(this.serverInfo, "User: " + clientName + " has joined to chat."));
 	}
 	
+	// Pass message received from connected client to handler
+	// registered for its kind:
+	
+	public void processMessage(ClientModel client, SocketMessage data)
+	{
+		int messageTag = data.getMessageTag();
+		MessageHandler messageHandler = null;
+		if(messageTag >= 0 && messageTag < this.messageHandlers.length)
+		{
+			messageHandler = this.messageHandlers[messageTag];
+		}
+		
+		if(messageHandler == null)
+		{
+			serverLog.log(true, "Ignoring unexpected {} message from {}", data.getMessageKind(), client.getDisplayName());
+			return;
+		}
+		messageHandler.handleMessage(client, data);
+	}
+	
+	// Remove client which connection was lost and notify others.
+	// Connection closed because client was too slow has its reason:
+	
+	public void clientDisconnected(ClientModel client)
+	{
+		if(client.getDisconnectReason() != null)
+		{
+			this.removeObserver(client, client.getDisconnectReason());
+			return;
+		}
+		if(this.removeClient(client) == true)
+		{
+			updateObservers(new BroadcastMessage(serverInfo, "User \"" + client.getClientInfo().getName() + "\" has left the chat."));
+		}
+	}
+	
 	@Override
 	public void addObserver(ServerObserver observer) 
 	{
 		ClientModel client = (ClientModel)observer;
-		this.connectedClients.put(client.getClientInfo().getName(), client);
 		
-		this.syncedClients.add(client);
-		this.activeUserList.add(client.getClientInfo());
+		// Others get only the join, and new client gets whole list.
+		// Changes made before list reaches new client are held by
+		// client until list arrives:
+		
+		RosterSnapshot snapshot = null;
+		this.rosterLock.lock();
+		try
+		{
+			// Client that disconnected during handshake already
+			// released its name:
+			if(this.registry.getClient(client.getClientInfo().getName()) != client)
+			{
+				return;
+			}
+			snapshot = this.roster.get().withJoined(client.getClientInfo());
+			this.roster.set(snapshot);
+			this.updateRoster(snapshot, new ClientDeltaMessage(snapshot.getVersion(), client.getClientInfo(), 0));
+			client.setSlowConsumerListener(this.slowConsumerHandler);
+			this.registry.add(client);
+		}
+		finally
+		{
+			this.rosterLock.unlock();
+		}
+		client.sendFrame(snapshot.getFrame());
+		if(this.cluster != null)
+		{
+			this.cluster.clientJoined(client.getClientInfo());
+		}
+		this.sendStoredMessages(client);
 		
 		this.updateServerClientList();
-		this.serverWindow.addMessage("Client " + client.getClientInfo().getName() + " joined to chat", false);
+		this.serverLog.log(false, "Client {} joined to chat", client.getClientInfo().getName(), null);
 		
-		ActiveClientThread clientThread = new ActiveClientThread(client);
-		new Thread(clientThread).start();
+		if(client.isBlocking() == true)
+		{
+			ActiveClientThread clientThread = new ActiveClientThread(client);
+			this.clientExecutor.execute(clientThread);
+		}
 	}
 
 	@Override
 	public void removeObserver(ServerObserver observer) 
+	{
+		this.removeClient((ClientModel)observer);
+	}
+	
+	// Disconnect client by server and tell others why it left:
+	
+	public void removeObserver(ServerObserver observer, String reason)
 	{
 		ClientModel client = (ClientModel)observer;
+		if(this.removeClient(client) == true)
+		{
+			serverLog.log(true, "Client {} has been disconnected: {}", client.getClientInfo().getName(), reason);
+			updateObservers(new BroadcastMessage(serverInfo, "User \"" + client.getClientInfo().getName() + "\" has been disconnected from the chat."));
+		}
+	}
+	
+	// Returns true if client left chat. Client is removed only
+	// once, and client that was not added to chat yet only releases
+	// its name:
+	
+	private boolean removeClient(ClientModel client)
+	{
+		boolean leftChat = false;
+		this.rosterLock.lock();
+		try
+		{
+			if(this.registry.remove(client) == false)
+			{
+				return false;
+			}
+			RosterSnapshot current = this.roster.get();
+			RosterSnapshot snapshot = current.withLeft(client.getClientInfo());
+			if(snapshot != current)
+			{
+				this.roster.set(snapshot);
+				this.updateRoster(snapshot, new ClientDeltaMessage(snapshot.getVersion(), null, client.getClientInfo().getClientId()));
+				leftChat = true;
+			}
+		}
+		finally
+		{
+			this.rosterLock.unlock();
+		}
 		
-		this.connectedClients.remove(client.getClientInfo().getName());
-		this.syncedClients.remove(client);
-		this.activeUserList.remove(client.getClientInfo());
-		
+		if(this.cluster != null)
+		{
+			this.cluster.clientLeft(client.getClientInfo());
+		}
+		if(this.offlineStore != null && leftChat == true)
+		{
+			this.offlineStore.clientLeft(client.getClientInfo());
+		}
+		this.rooms.leaveAll(client);
 		client.closeSocket();
 
 		this.updateServerClientList();
-		serverWindow.addMessage("Client " + client.getClientInfo().getName() + " exited from chat", false);
+		serverLog.log(false, "Client {} exited from chat", client.getClientInfo().getName(), null);
+		return leftChat;
 	}
 
+	// Client of other cluster node joined chat:
+	
+	public void addRemoteClient(ClientInfoModel clientInfo)
+	{
+		this.rosterLock.lock();
+		try
+		{
+			RosterSnapshot snapshot = this.roster.get().withJoined(clientInfo);
+			this.roster.set(snapshot);
+			this.updateRoster(snapshot, new ClientDeltaMessage(snapshot.getVersion(), clientInfo, 0));
+		}
+		finally
+		{
+			this.rosterLock.unlock();
+		}
+		this.updateServerClientList();
+		this.newClientNotification(clientInfo.getName());
+	}
+	
+	// Client of other cluster node left chat, or link to its node
+	// was lost:
+	
+	public void removeRemoteClient(ClientInfoModel clientInfo)
+	{
+		this.rosterLock.lock();
+		try
+		{
+			RosterSnapshot current = this.roster.get();
+			RosterSnapshot snapshot = current.withLeft(clientInfo);
+			if(snapshot == current)
+			{
+				return;
+			}
+			this.roster.set(snapshot);
+			this.updateRoster(snapshot, new ClientDeltaMessage(snapshot.getVersion(), null, clientInfo.getClientId()));
+		}
+		finally
+		{
+			this.rosterLock.unlock();
+		}
+		if(this.offlineStore != null)
+		{
+			this.offlineStore.clientLeft(clientInfo);
+		}
+		this.updateServerClientList();
+		updateObservers(new BroadcastMessage(serverInfo, "User \"" + clientInfo.getName() + "\" has left the chat."));
+	}
+	
+	// Deliver client message passed by other cluster node or event
+	// loop:
+	
+	public void deliverMessage(int recipientId, SocketMessage data)
+	{
+		ClientModel receipient = this.registry.getClient(recipientId);
+		if(receipient == null)
+		{
+			if(this.storeMessage(recipientId, data) == false)
+			{
+				serverLog.log(true, "Failed forward message to client #{} because recipient is undefined", recipientId, null);
+			}
+			return;
+		}
+		receipient.forwardMessage(data);
+	}
+	
+	// Keep message for client that left. Returns false if client
+	// is unknown or cannot get more messages:
+	
+	private boolean storeMessage(int recipientId, SocketMessage data)
+	{
+		if(this.offlineStore == null || this.offlineStore.storeMessage(recipientId, data) == false)
+		{
+			return false;
+		}
+		forwardLog.log(false, "Storing message for client #{} that is not connected", recipientId, null);
+		return true;
+	}
+	
+	// Message for user that is not connected names user and key it
+	// was encrypted with. User that joined again with the same key
+	// gets it right away, otherwise it is stored and sender is told
+	// if it cannot be:
+	
+	private void forwardOfflineMessage(ClientModel client, SocketMessage data)
+	{
+		ClientMessage message = null;
+		try
+		{
+			if(data instanceof RelayMessage)
+			{
+				message = (ClientMessage)((RelayMessage)data).decodeMessage();
+			}
+			else
+			{
+				message = (ClientMessage)data;
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot decode client message > " + e.getMessage());
+			return;
+		}
+		ClientInfoModel recipientInfo = message.getOfflineRecipient();
+		if(recipientInfo == null || recipientInfo.getName() == null || recipientInfo.getPublicKey() == null)
+		{
+			serverLog.log(true, "Failed forward message from {} because recipient is undefined", client.getDisplayName(), null);
+			return;
+		}
+		
+		ClientInfoModel connected = this.roster.get().getClient(recipientInfo.getName());
+		if(connected != null && isSameKey(recipientInfo.getPublicKey(), connected.getPublicKey()) == true)
+		{
+			ClientMessage readdressed = new ClientMessage(message.getSenderId(), connected.getClientId(), message.getMessage());
+			this.processMessage(client, readdressed);
+			return;
+		}
+		if(connected == null && this.offlineStore != null && this.offlineStore.storeMessage(recipientInfo, message) == true)
+		{
+			forwardLog.log(false, "Storing message for {} that is not connected", recipientInfo.getName(), null);
+			return;
+		}
+		serverLog.log(false, "Failed store message from {} for {}", client.getDisplayName(), recipientInfo.getName());
+		client.sendData(new BroadcastMessage(this.serverInfo, "Message to user \"" + recipientInfo.getName() + "\" cannot be kept until this user joins the chat again."));
+	}
+	
+	// Message encrypted with one key can be read only with the same
+	// key pair:
+	
+	private static boolean isSameKey(PublicRSAKey key, PublicRSAKey otherKey)
+	{
+		return otherKey != null && key.getN().equals(otherKey.getN()) && key.getE().equals(otherKey.getE());
+	}
+	
+	// Send messages stored while client was not connected, all at
+	// once after client list:
+	
+	private void sendStoredMessages(ClientModel client)
+	{
+		if(this.offlineStore == null)
+		{
+			return;
+		}
+		List<ClientMessage> messages = this.offlineStore.takeMessages(client.getClientInfo());
+		for(ClientMessage message : messages)
+		{
+			client.sendData(message);
+		}
+		if(messages.isEmpty() == false)
+		{
+			serverLog.log(false, "Sent {} stored messages to {}", messages.size(), client.getDisplayName());
+		}
+	}
+	
+	// Send broadcast to clients of this server, or to members of its
+	// room:
+	
+	public void deliverBroadcast(BroadcastMessage data)
+	{
+		if(data.getRoom() == null)
+		{
+			this.updateObservers(data);
+			return;
+		}
+		this.fanOut.send(this.rooms.getMembers(data.getRoom()), new Frame(data), null);
+	}
+	
 	@Override
 	public void updateObservers(SocketMessage data) {
-		serverWindow.addMessage("Updating clients with new data ...", false);
-		for(ClientModel client : syncedClients)
+		updateLog.log(false, "Updating clients with new data ...", null, null);
+		this.fanOut.send(this.registry.getClients(), new Frame(data), null);
+	}
+
+	// Send change of client list to all clients. Lagging client gets
+	// whole list instead when policy says so, and its queue drops all
+	// changes this list replaces:
+	
+	private void updateRoster(RosterSnapshot snapshot, ClientDeltaMessage deltaMessage)
+	{
+		Frame laggingFrame = null;
+		if(this.slowConsumerPolicy.getAction() == SlowConsumerPolicy.Action.COALESCE_UPDATES)
 		{
-			client.updateObserver(data);
+			laggingFrame = snapshot.getFrame();
 		}
+		updateLog.log(false, "Updating clients with new data ...", null, null);
+		this.fanOut.send(this.registry.getClients(), new Frame(deltaMessage), laggingFrame);
 	}
 
 	//Inner classes:
 	
+	class ForwardClientMessage implements MessageHandler
+	{
+		// Binary client message is forwarded without decoding. Sender
+		// id is checked, so client cannot send message in name of
+		// other client:
+		
+		@Override
+		public void handleMessage(ClientModel client, SocketMessage data)
+		{
+			int senderId = 0;
+			int recipientId = 0;
+			if(data instanceof RelayMessage)
+			{
+				senderId = ((RelayMessage)data).getSenderId();
+				recipientId = ((RelayMessage)data).getRecipientId();
+			}
+			else
+			{
+				senderId = ((ClientMessage)data).getSenderId();
+				recipientId = ((ClientMessage)data).getRecipientId();
+			}
+			
+			if(senderId != client.getClientInfo().getClientId())
+			{
+				serverLog.log(true, "Failed forward message from {} because sender id is not its own", client.getDisplayName(), null);
+				return;
+			}
+			if(recipientId == 0)
+			{
+				forwardOfflineMessage(client, data);
+				return;
+			}
+			if(cluster != null && cluster.routeMessage(recipientId, data) == true)
+			{
+				forwardLog.log(false, "Forwarding message from {} to cluster node {}", client.getDisplayName(), cluster.getClientNode(recipientId));
+				return;
+			}
+			if(messageRouter != null && messageRouter.routeMessage(recipientId, data) == true)
+			{
+				forwardLog.log(false, "Forwarding message from {} to client #{}", client.getDisplayName(), recipientId);
+				return;
+			}
+			
+			ClientModel receipient = registry.getClient(recipientId);
+			if(receipient == null)
+			{
+				if(storeMessage(recipientId, data) == true)
+				{
+					return;
+				}
+				serverLog.log(true, "Failed forward message from {} because recipient is undefined", client.getDisplayName(), null);
+				return;
+			}
+			receipient.forwardMessage(data);
+			forwardLog.log(false, "Forwarding message from {} to {}", client.getDisplayName(), receipient.getDisplayName());
+		}
+	}
+	
+	// Only members of room can send message to it:
+	
+	class ForwardBroadcastMessage implements MessageHandler
+	{
+		@Override
+		public void handleMessage(ClientModel client, SocketMessage data)
+		{
+			BroadcastMessage broadcastMessage = (BroadcastMessage)data;
+			String room = broadcastMessage.getRoom();
+			if(room != null && rooms.isMember(room, client) == false)
+			{
+				serverLog.log(true, "Failed forward message from {} because it is not member of room {}", client.getDisplayName(), room);
+				return;
+			}
+			
+			deliverBroadcast(broadcastMessage);
+			if(cluster != null)
+			{
+				cluster.broadcast(broadcastMessage);
+			}
+			broadcastLog.log(true, "Forwarding broadcast message from {} to {}", broadcastMessage.getSenderName(), room == null ? "all users" : "room " + room);
+		}
+	}
+	
+	// Join or leave chat room, and tell client if it is member of
+	// room and how many members room has:
+	
+	class ChangeRoomMembership implements MessageHandler
+	{
+		@Override
+		public void handleMessage(ClientModel client, SocketMessage data)
+		{
+			RoomMessage roomMessage = (RoomMessage)data;
+			String room = roomMessage.getRoom();
+			if(RoomIndex.isValidName(room) == false)
+			{
+				serverLog.log(true, "Ignoring invalid room name from {}", client.getDisplayName(), null);
+				return;
+			}
+			
+			if(roomMessage.isJoined() == true)
+			{
+				if(rooms.join(room, client) == false)
+				{
+					serverLog.log(true, "Client {} cannot join room {} because it is in too many rooms", client.getDisplayName(), room);
+				}
+				
+				// Client that left chat while joining is not left
+				// in room:
+				
+				if(registry.getClient(client.getClientInfo().getClientId()) != client)
+				{
+					rooms.leaveAll(client);
+					return;
+				}
+			}
+			else
+			{
+				rooms.leave(room, client);
+			}
+			
+			RoomMessage reply = new RoomMessage(serverInfo, room, rooms.isMember(room, client));
+			reply.setMemberCount(rooms.getMembers(room).length);
+			client.sendData(reply);
+			serverLog.log(false, "Client {} changed membership of room {}", client.getDisplayName(), room);
+		}
+	}
+	
+	// Client that missed change of client list asks for whole list:
+	
+	class SendClientList implements MessageHandler
+	{
+		@Override
+		public void handleMessage(ClientModel client, SocketMessage data)
+		{
+			client.sendFrame(roster.get().getFrame());
+			updateLog.log(false, "Sending client list to {}", client.getDisplayName(), null);
+		}
+	}
+	
+	class SlowConsumerHandler implements SlowConsumerListener
+	{
+		@Override
+		public void clientLagging(ClientModel client)
+		{
+			serverLog.log(true, "Client {} is falling behind: {}", client.getDisplayName(), client.getLagReport());
+			updateServerClientList();
+		}
+		
+		@Override
+		public void clientCaughtUp(ClientModel client)
+		{
+			serverLog.log(false, "Client {} caught up: {}", client.getDisplayName(), client.getLagReport());
+			updateServerClientList();
+		}
+	}
+	
 	class ActiveClientThread implements Runnable
 	{
 		private ClientModel client = null;
@@ -162,41 +740,21 @@ public class ClientsController implements ServerSubject
 		
 		@Override
 		public void run() {
-			while(client.getClientSocket() != null)
+			while(client.isConnected())
 			{
 				try
 				{
-					SocketMessage data = this.client.getData();
-					if(data.getMessageType().equals("ClientMessage") == true)
-					{
-						ClientMessage userMessage = (ClientMessage)data;
-						ClientModel receipient = connectedClients.get(userMessage.getRecipientName());
-						if(receipient != null)
-						{
-							syncedClients.get(syncedClients.indexOf(receipient)).sendData(userMessage);
-							serverWindow.addMessage("Forwarding message from " + userMessage.getSenderName() + " to " + userMessage.getRecipientName(), false);
-						}
-						else
-						{
-							serverWindow.addMessage("Failed forward message from" + userMessage.getSenderName() + " because recipient is undefined", true);
-						}
-					} else if(data.getMessageType().equals("BroadcastMessage") == true){
-						BroadcastMessage broadcastMessage = (BroadcastMessage)data;
-						updateObservers(broadcastMessage);
-						serverWindow.addMessage("Forwarding broadcast message from " + broadcastMessage.getSenderName() + " to all users", true);
-					}
+					processMessage(client, this.client.getData());
 				}
 				catch (Exception e)
 				{
-					if(client.getClientSocket() != null) 
-					{
-						removeObserver(client);
-						updateObservers(new BroadcastMessage(serverInfo, "User \"" + client.getClientInfo().getName() + "\" has left the chat."));
-						updateObservers(new ClientUpdateMessage(activeUserList));
-						break;
-					}
+					break;
 				}
 			}
+			
+			// Connection can also be closed by its writer, for example
+			// when client is too slow, so it is removed here either way:
+			clientDisconnected(client);
 		}
 	}
 
@@ -0,0 +1,734 @@
+/* File: ClusterController.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class connects this server with other servers of cluster.
+ *    Every two nodes keep one persistent TCP link, opened by node
+ *    with lower id and opened again when it is lost. Nodes tell each
+ *    other about clients that join and leave them, so every node has
+ *    replica of routing table and client list of whole cluster, and
+ *    client message for client of other node is passed over link to
+ *    that node. Names are unique in whole cluster: consistent hash
+ *    ring of linked nodes picks owner node of every name, and only
+ *    owner decides if name can be reserved. Broadcasts are passed to
+ *    every node, which sends them to its own clients.
+ *
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import model.BroadcastMessage;
+import model.ClientDeltaMessage;
+import model.ClientInfoModel;
+import model.ClientModel;
+import model.ClusterLink;
+import model.ClusterRecord;
+import model.ClusterRoutingTable;
+import model.HashRing;
+import model.RelayMessage;
+import model.ServerConfig;
+import model.SocketMessage;
+import model.SocketMessageCodec;
+
+public class ClusterController implements DirectMessageRouter
+{
+	// Controllers:
+	private ClientsController clientsController = null;
+	private ServerLogController serverLog = null;
+
+	// Properties:
+	private static final int LINK_QUEUE_SIZE = 64 * 1024;
+	private static final int CONNECT_INTERVAL = 1000;
+
+	private int nodeId = 0;
+	private List<InetSocketAddress> nodes = null;
+	private String bindAddress = null;
+	private int reserveTimeout = 0;
+	private final ClusterRoutingTable routingTable = new ClusterRoutingTable();
+	private final AtomicReferenceArray<ClusterLink> links;
+	private volatile HashRing ring = null;
+
+	// Names reserved by this node as their owner, with node that
+	// reserved them:
+	private final ConcurrentHashMap<String, Integer> reservedNames = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentHashMap<Integer, PendingReservation> pendingReservations = new ConcurrentHashMap<Integer, PendingReservation>();
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+
+	// Links are added and clients announced one at a time, so new
+	// link gets every client exactly before its later changes. Lock
+	// only puts records on link queues, links are written by their
+	// own threads and full links are closed after lock is released:
+	private final ReentrantLock linkLock = new ReentrantLock();
+	private ExecutorService linkExecutor = null;
+	private ScheduledExecutorService connectTimer = null;
+	private volatile ServerSocket listenSocket = null;
+
+	// Default constructor:
+
+	public ClusterController(ClientsController clientsController, ServerConfig config, ServerLogController serverLog)
+	{
+		this.clientsController = clientsController;
+		this.serverLog = serverLog;
+		this.nodeId = config.getNodeId();
+		this.nodes = config.getClusterNodes();
+		this.bindAddress = config.getBindAddress();
+		this.reserveTimeout = Math.max(50, config.getHandshakeTimeout() / 2);
+		this.links = new AtomicReferenceArray<ClusterLink>(this.nodes.size());
+		this.ring = new HashRing(new int[] { this.nodeId });
+	}
+
+	// Getter methods:
+
+	public int getNodeId()
+	{
+		return this.nodeId;
+	}
+
+	// Returns -1 if client is not hosted by other node:
+
+	public int getClientNode(int clientId)
+	{
+		return this.routingTable.getNodeId(clientId);
+	}
+
+	// Class methods:
+
+	public void start() throws IOException
+	{
+		if(this.nodeId >= this.nodes.size())
+		{
+			throw new IOException("Node id " + this.nodeId + " is not in cluster node list");
+		}
+		InetSocketAddress address = null;
+		if(this.bindAddress != null)
+		{
+			address = new InetSocketAddress(this.bindAddress, this.nodes.get(this.nodeId).getPort());
+		}
+		else
+		{
+			address = new InetSocketAddress(this.nodes.get(this.nodeId).getPort());
+		}
+		ServerSocket serverSocket = new ServerSocket();
+		serverSocket.setReuseAddress(true);
+		serverSocket.bind(address);
+		this.listenSocket = serverSocket;
+
+		this.linkExecutor = Executors.newCachedThreadPool(new HandshakeController.DaemonThreadFactory("Cluster"));
+		this.connectTimer = Executors.newSingleThreadScheduledExecutor(new HandshakeController.DaemonThreadFactory("ClusterConnect"));
+		this.linkExecutor.execute(new AcceptLinks(serverSocket));
+		this.connectTimer.scheduleWithFixedDelay(new ConnectLinks(), 0, CONNECT_INTERVAL, TimeUnit.MILLISECONDS);
+		this.serverLog.log(false, "Cluster node {} listening on port {}", this.nodeId, address.getPort());
+	}
+
+	public void stop()
+	{
+		ServerSocket serverSocket = this.listenSocket;
+		this.listenSocket = null;
+		if(serverSocket == null)
+		{
+			return;
+		}
+		try
+		{
+			serverSocket.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cluster: Cannot close link socket > " + e.getMessage());
+		}
+		this.connectTimer.shutdownNow();
+		for(int i = 0; i < this.links.length(); i++)
+		{
+			ClusterLink link = this.links.get(i);
+			if(link != null)
+			{
+				link.close();
+			}
+		}
+		this.linkExecutor.shutdownNow();
+		this.routingTable.clear();
+		this.reservedNames.clear();
+	}
+
+	// Called by handshake worker after name was reserved on this node.
+	// Waits for owner node of name, and returns false if name is
+	// taken on other node or owner did not answer in time:
+
+	public boolean reserveName(String name)
+	{
+		int ownerId = this.ring.getNode(name);
+		if(ownerId == this.nodeId)
+		{
+			return this.reserveAsOwner(name, this.nodeId);
+		}
+		ClusterLink owner = this.links.get(ownerId);
+		if(owner == null)
+		{
+			return false;
+		}
+
+		int requestId = this.nextRequestId.incrementAndGet();
+		PendingReservation reservation = new PendingReservation(ownerId);
+		this.pendingReservations.put(requestId, reservation);
+		try
+		{
+			if(owner.send(new ClusterRecord(ClusterRecord.RESERVE_NAME, requestId, name, null)) == false)
+			{
+				return false;
+			}
+			if(reservation.result.get(this.reserveTimeout, TimeUnit.MILLISECONDS) == true)
+			{
+				return true;
+			}
+			return false;
+		}
+		catch (TimeoutException e)
+		{
+			// Owner may still reserve name after answer was given up:
+			this.serverLog.log(true, "Cluster node {} did not answer reservation of {}", ownerId, name);
+			owner.send(new ClusterRecord(ClusterRecord.CLIENT_LEFT, 0, name, null));
+			return false;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e)
+		{
+			return false;
+		}
+		finally
+		{
+			this.pendingReservations.remove(requestId);
+		}
+	}
+
+	// Name is free if no node has client with it and no node
+	// reserved it:
+
+	private boolean reserveAsOwner(String name, int requestingNode)
+	{
+		if(this.routingTable.hasName(name) == true)
+		{
+			return false;
+		}
+		if(requestingNode != this.nodeId && this.clientsController.getClientByName(name) != null)
+		{
+			return false;
+		}
+		Integer reservedBy = this.reservedNames.putIfAbsent(name, requestingNode);
+		return reservedBy == null || (reservedBy == this.nodeId && requestingNode == this.nodeId);
+	}
+
+	// Tell other nodes about client that joined chat on this node.
+	// Client that already left is not announced: its leave is sent
+	// under the same lock, so join never follows it:
+
+	public void clientJoined(ClientInfoModel clientInfo)
+	{
+		byte[] record = encodeRecord(createJoinRecord(clientInfo));
+		if(record == null)
+		{
+			return;
+		}
+		List<ClusterLink> fullLinks = null;
+		this.linkLock.lock();
+		try
+		{
+			ClientModel client = this.clientsController.getClientById(clientInfo.getClientId());
+			if(client == null || client.getClientInfo() != clientInfo)
+			{
+				return;
+			}
+			fullLinks = this.queueOnLinks(record);
+		}
+		finally
+		{
+			this.linkLock.unlock();
+		}
+		closeFullLinks(fullLinks);
+	}
+
+	// Tell other nodes that client left this node, which also
+	// releases its name on owner node:
+
+	public void clientLeft(ClientInfoModel clientInfo)
+	{
+		this.reservedNames.remove(clientInfo.getName(), this.nodeId);
+		byte[] record = encodeRecord(new ClusterRecord(ClusterRecord.CLIENT_LEFT, clientInfo.getClientId(), clientInfo.getName(), null));
+		if(record == null)
+		{
+			return;
+		}
+		List<ClusterLink> fullLinks = null;
+		this.linkLock.lock();
+		try
+		{
+			fullLinks = this.queueOnLinks(record);
+		}
+		finally
+		{
+			this.linkLock.unlock();
+		}
+		closeFullLinks(fullLinks);
+	}
+
+	// Put record on queue of every link. Called with linkLock held,
+	// returns links that were full:
+
+	private List<ClusterLink> queueOnLinks(byte[] record)
+	{
+		List<ClusterLink> fullLinks = new ArrayList<ClusterLink>();
+		for(int i = 0; i < this.links.length(); i++)
+		{
+			ClusterLink link = this.links.get(i);
+			if(link != null && link.queue(record) == false)
+			{
+				fullLinks.add(link);
+			}
+		}
+		return fullLinks;
+	}
+
+	private static void closeFullLinks(List<ClusterLink> fullLinks)
+	{
+		for(ClusterLink link : fullLinks)
+		{
+			link.closeFull();
+		}
+	}
+
+	// Returns null when record is null or cannot be encoded:
+
+	private static byte[] encodeRecord(ClusterRecord record)
+	{
+		if(record == null)
+		{
+			return null;
+		}
+		try
+		{
+			return record.toBytes();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cluster: Cannot encode record > " + e.getMessage());
+			return null;
+		}
+	}
+
+	// Pass client message to node that hosts recipient. Returns false
+	// if recipient is not client of other node:
+
+	@Override
+	public boolean routeMessage(int recipientId, SocketMessage data)
+	{
+		int recipientNode = this.routingTable.getNodeId(recipientId);
+		if(recipientNode < 0)
+		{
+			return false;
+		}
+		ClusterLink link = this.links.get(recipientNode);
+		try
+		{
+			byte[] frame = null;
+			if(data instanceof RelayMessage)
+			{
+				frame = ((RelayMessage)data).getFrame();
+			}
+			else
+			{
+				frame = SocketMessageCodec.encode(data, SocketMessageCodec.BINARY, false);
+			}
+			if(link == null || link.send(new ClusterRecord(ClusterRecord.CLIENT_MESSAGE, recipientId, null, frame)) == false)
+			{
+				this.serverLog.log(true, "Cannot pass message for client #{} to cluster node {}", recipientId, recipientNode);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cluster: Cannot encode message > " + e.getMessage());
+		}
+		return true;
+	}
+
+	// Pass broadcast to all other nodes, message is encoded once:
+
+	public void broadcast(BroadcastMessage data)
+	{
+		ClusterRecord record = null;
+		try
+		{
+			record = new ClusterRecord(ClusterRecord.BROADCAST, 0, null, SocketMessageCodec.encode(data, SocketMessageCodec.BINARY, false));
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cluster: Cannot encode broadcast > " + e.getMessage());
+			return;
+		}
+		for(int i = 0; i < this.links.length(); i++)
+		{
+			ClusterLink link = this.links.get(i);
+			if(link != null)
+			{
+				link.send(record);
+			}
+		}
+	}
+
+	private static ClusterRecord createJoinRecord(ClientInfoModel clientInfo)
+	{
+		try
+		{
+			byte[] frame = SocketMessageCodec.encode(new ClientDeltaMessage(0, clientInfo, 0), SocketMessageCodec.BINARY, false);
+			return new ClusterRecord(ClusterRecord.CLIENT_JOINED, clientInfo.getClientId(), null, frame);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cluster: Cannot encode client " + clientInfo.getName() + " > " + e.getMessage());
+			return null;
+		}
+	}
+
+	// Add link after other node said who it is. Only one link to
+	// every node is kept, and new link gets all clients of this node
+	// before anything else:
+
+	private boolean addLink(ClusterLink link)
+	{
+		boolean full = false;
+		this.linkLock.lock();
+		try
+		{
+			if(this.links.compareAndSet(link.getNodeId(), null, link) == false)
+			{
+				return false;
+			}
+			for(ClientModel client : this.clientsController.getClients())
+			{
+				byte[] record = encodeRecord(createJoinRecord(client.getClientInfo()));
+				if(record != null && link.queue(record) == false)
+				{
+					full = true;
+					break;
+				}
+			}
+		}
+		finally
+		{
+			this.linkLock.unlock();
+		}
+		if(full == true)
+		{
+			link.closeFull();
+		}
+		this.updateRing();
+		this.serverLog.log(false, "Linked with cluster node {} at {}", link.getNodeId(), link.getRemoteAddress());
+		return true;
+	}
+
+	// Clients of node which link was lost are removed from chat,
+	// and its names can be reserved again:
+
+	private void removeLink(ClusterLink link)
+	{
+		link.close();
+		int linkNode = link.getNodeId();
+		if(linkNode < 0 || this.links.compareAndSet(linkNode, link, null) == false)
+		{
+			return;
+		}
+		this.updateRing();
+		this.reservedNames.values().removeIf(new ReservedBy(linkNode));
+		for(PendingReservation reservation : this.pendingReservations.values())
+		{
+			if(reservation.ownerId == linkNode)
+			{
+				reservation.result.complete(false);
+			}
+		}
+		for(ClusterRoutingTable.Route route : this.routingTable.removeNode(linkNode))
+		{
+			this.clientsController.removeRemoteClient(route.getClientInfo());
+		}
+		this.serverLog.log(true, "Lost link with cluster node {}", linkNode, null);
+	}
+
+	// Ring has this node and every linked node:
+
+	private void updateRing()
+	{
+		this.linkLock.lock();
+		try
+		{
+			List<Integer> linkedNodes = new ArrayList<Integer>();
+			for(int i = 0; i < this.links.length(); i++)
+			{
+				if(i == this.nodeId || this.links.get(i) != null)
+				{
+					linkedNodes.add(i);
+				}
+			}
+			int[] nodeIds = new int[linkedNodes.size()];
+			for(int i = 0; i < nodeIds.length; i++)
+			{
+				nodeIds[i] = linkedNodes.get(i);
+			}
+			this.ring = new HashRing(nodeIds);
+		}
+		finally
+		{
+			this.linkLock.unlock();
+		}
+	}
+
+	private void processRecord(ClusterLink link, ClusterRecord record) throws IOException
+	{
+		int linkNode = link.getNodeId();
+		switch(record.getOperation())
+		{
+			case ClusterRecord.CLIENT_JOINED:
+				ClientInfoModel joinedClient = ((ClientDeltaMessage)record.getMessage()).getJoinedClient();
+				if(joinedClient != null && this.routingTable.add(joinedClient, linkNode) != null)
+				{
+					this.clientsController.addRemoteClient(joinedClient);
+				}
+				break;
+			case ClusterRecord.CLIENT_LEFT:
+				this.reservedNames.remove(record.getText(), linkNode);
+				ClusterRoutingTable.Route route = this.routingTable.remove(record.getNumber(), linkNode);
+				if(route != null)
+				{
+					this.clientsController.removeRemoteClient(route.getClientInfo());
+				}
+				break;
+			case ClusterRecord.RESERVE_NAME:
+				boolean reserved = this.reserveAsOwner(record.getText(), linkNode);
+				link.send(new ClusterRecord(reserved == true ? ClusterRecord.NAME_ACCEPTED : ClusterRecord.NAME_REJECTED, record.getNumber(), record.getText(), null));
+				break;
+			case ClusterRecord.NAME_ACCEPTED:
+			case ClusterRecord.NAME_REJECTED:
+				PendingReservation reservation = this.pendingReservations.get(record.getNumber());
+				if(reservation != null)
+				{
+					reservation.result.complete(record.getOperation() == ClusterRecord.NAME_ACCEPTED);
+				}
+				break;
+			case ClusterRecord.CLIENT_MESSAGE:
+				this.clientsController.deliverMessage(record.getNumber(), record.getMessage());
+				break;
+			case ClusterRecord.BROADCAST:
+				this.clientsController.deliverBroadcast((BroadcastMessage)record.getMessage());
+				break;
+			default:
+				this.serverLog.log(true, "Ignoring unknown record {} from cluster node {}", record.getOperation(), linkNode);
+		}
+	}
+
+	// Inner classes:
+
+	class PendingReservation
+	{
+		private int ownerId = 0;
+		private final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+		public PendingReservation(int ownerId)
+		{
+			this.ownerId = ownerId;
+		}
+	}
+
+	static class ReservedBy implements Predicate<Integer>
+	{
+		private int nodeId = 0;
+
+		public ReservedBy(int nodeId)
+		{
+			this.nodeId = nodeId;
+		}
+
+		@Override
+		public boolean test(Integer reservedBy)
+		{
+			return reservedBy == this.nodeId;
+		}
+	}
+
+	// Reads records of one link. First record tells which node is
+	// on other side, node that opened link already knows it:
+
+	class LinkReader implements Runnable
+	{
+		private ClusterLink link = null;
+		private int expectedNode = -1;
+
+		public LinkReader(ClusterLink link, int expectedNode)
+		{
+			this.link = link;
+			this.expectedNode = expectedNode;
+		}
+
+		@Override
+		public void run()
+		{
+			linkExecutor.execute(new LinkWriter(this.link));
+			this.link.send(new ClusterRecord(ClusterRecord.HELLO, nodeId, null, null));
+			try
+			{
+				ClusterRecord hello = this.link.receive();
+				int helloNode = hello.getNumber();
+				if(hello.getOperation() != ClusterRecord.HELLO || helloNode < 0 || helloNode >= links.length() || helloNode == nodeId
+						|| (this.expectedNode >= 0 && helloNode != this.expectedNode))
+				{
+					System.err.println("Cluster: Unexpected node on link " + this.link.getRemoteAddress());
+					this.link.close();
+					return;
+				}
+				this.link.setNodeId(helloNode);
+				if(addLink(this.link) == false)
+				{
+					this.link.close();
+					return;
+				}
+				while(this.link.isOpen() == true)
+				{
+					processRecord(this.link, this.link.receive());
+				}
+			}
+			catch (IOException e)
+			{
+
+			}
+			catch (RuntimeException e)
+			{
+				System.err.println("Cluster: Invalid record from " + this.link.getRemoteAddress() + " > " + e);
+			}
+			removeLink(this.link);
+		}
+	}
+
+	class LinkWriter implements Runnable
+	{
+		private ClusterLink link = null;
+
+		public LinkWriter(ClusterLink link)
+		{
+			this.link = link;
+		}
+
+		@Override
+		public void run()
+		{
+			this.link.writeRecords();
+		}
+	}
+
+	class AcceptLinks implements Runnable
+	{
+		private ServerSocket serverSocket = null;
+
+		public AcceptLinks(ServerSocket serverSocket)
+		{
+			this.serverSocket = serverSocket;
+		}
+
+		@Override
+		public void run()
+		{
+			while(listenSocket == this.serverSocket)
+			{
+				try
+				{
+					Socket socket = this.serverSocket.accept();
+					linkExecutor.execute(new LinkReader(new ClusterLink(socket, LINK_QUEUE_SIZE), -1));
+				}
+				catch (IOException e)
+				{
+
+				}
+			}
+		}
+	}
+
+	// Node opens links to nodes with higher id, so two nodes never
+	// open link to each other at the same time:
+
+	class ConnectLinks implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			for(int i = nodeId + 1; i < nodes.size(); i++)
+			{
+				if(links.get(i) != null || listenSocket == null)
+				{
+					continue;
+				}
+				InetSocketAddress node = nodes.get(i);
+				Socket socket = new Socket();
+				try
+				{
+					socket.connect(new InetSocketAddress(node.getHostString(), node.getPort()), CONNECT_INTERVAL);
+					linkExecutor.execute(new LinkReader(new ClusterLink(socket, LINK_QUEUE_SIZE), i));
+					this.waitForHello(i);
+				}
+				catch (IOException e)
+				{
+					try
+					{
+						socket.close();
+					}
+					catch (IOException closeException)
+					{
+
+					}
+				}
+			}
+		}
+
+		// Give link time to be added, so it is not opened twice:
+
+		private void waitForHello(int node)
+		{
+			for(int wait = 0; wait < 20 && links.get(node) == null; wait++)
+			{
+				try
+				{
+					Thread.sleep(CONNECT_INTERVAL / 20);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+}
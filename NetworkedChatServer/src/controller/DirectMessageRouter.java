@@ -0,0 +1,28 @@
+/* File: DirectMessageRouter.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is template for router that delivers direct
+ *     message on thread that owns recipient. It can be called from
+ *     any thread. Router returns false for message it cannot take,
+ *     for example when it is stopped.
+ *
+ */
+
+package controller;
+
+import model.SocketMessage;
+
+public interface DirectMessageRouter
+{
+	// Class methods:
+
+	public boolean routeMessage(int recipientId, SocketMessage data);
+}
@@ -0,0 +1,60 @@
+/* File: ExecutorFactory.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class creates executors that run blocking server tasks
+ *    (accept loop and per-client readers) for selected execution mode.
+ *    Virtual threads are looked up at run time, so server still
+ *    builds and runs on Java versions that do not have them.
+ *
+ */
+
+package controller;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.ServerConfig;
+
+public final class ExecutorFactory
+{
+	// Default constructor:
+
+	private ExecutorFactory()
+	{
+
+	}
+
+	// Class methods:
+
+	public static ExecutorService createClientExecutor(ServerConfig.ExecutionMode executionMode)
+	{
+		if(executionMode == ServerConfig.ExecutionMode.VIRTUAL)
+		{
+			return createVirtualThreadExecutor();
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	private static ExecutorService createVirtualThreadExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		}
+		catch (ReflectiveOperationException | UnsupportedOperationException e)
+		{
+			System.err.println("Server: Virtual threads are not available in this Java runtime, using platform threads.");
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
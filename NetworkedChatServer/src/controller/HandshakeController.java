@@ -0,0 +1,205 @@
+/* File: HandshakeController.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class runs handshake stage of new connections on its own
+ *    worker pool, so accept loop only accepts sockets and one slow
+ *    client cannot delay others. Every connection has deadline, and
+ *    connection that does not finish handshake before it is closed.
+ *
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.ClientModel;
+import model.FlushPolicy;
+import model.ServerConfig;
+import model.SlowConsumerPolicy;
+import model.SocketConnection;
+import model.SocketMessage;
+
+public class HandshakeController
+{
+	// Controllers:
+	private ServerController serverController = null;
+
+	// Properties:
+	private ServerConfig config = null;
+	private SlowConsumerPolicy slowConsumerPolicy = null;
+	private FlushPolicy flushPolicy = null;
+	private Executor writerExecutor = null;
+	private ThreadPoolExecutor handshakePool = null;
+	private ScheduledThreadPoolExecutor deadlineTimer = null;
+
+	// Default constructor:
+
+	public HandshakeController(ServerController serverController, ServerConfig config, SlowConsumerPolicy slowConsumerPolicy, FlushPolicy flushPolicy, Executor writerExecutor)
+	{
+		this.serverController = serverController;
+		this.config = config;
+		this.slowConsumerPolicy = slowConsumerPolicy;
+		this.flushPolicy = flushPolicy;
+		this.writerExecutor = writerExecutor;
+
+		this.handshakePool = new ThreadPoolExecutor(config.getHandshakeThreads(), config.getHandshakeThreads(),
+				30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(config.getHandshakeQueueSize()),
+				new DaemonThreadFactory("Handshake"));
+		this.handshakePool.allowCoreThreadTimeOut(true);
+
+		this.deadlineTimer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("HandshakeDeadline"));
+		this.deadlineTimer.setRemoveOnCancelPolicy(true);
+	}
+
+	// Class methods:
+
+	// Blocking modes: read and check handshake of accepted socket
+	// on handshake worker:
+
+	public void acceptSocket(Socket socket)
+	{
+		try
+		{
+			this.handshakePool.execute(new SocketHandshake(socket));
+		}
+		catch (RejectedExecutionException e)
+		{
+			System.err.println("Server: Too many pending handshakes, closing " + socket.getRemoteSocketAddress());
+			closeQuietly(socket);
+		}
+	}
+
+	// Non-blocking mode: handshake frame was already decoded by event
+	// loop, so only checking and registering is moved off event loop:
+
+	public void processHandshake(final ClientModel client, final SocketMessage data)
+	{
+		try
+		{
+			this.handshakePool.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if(serverController.handleHandshake(client, data) == false)
+					{
+						client.closeSocket();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			client.closeSocket();
+		}
+	}
+
+	// Close connection if it is not accepted before deadline:
+
+	public ScheduledFuture<?> watch(final ClientModel client)
+	{
+		return this.deadlineTimer.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(client.getClientInfo() == null && client.isConnected() == true)
+				{
+					System.err.println("Server: Handshake timeout for " + client.getDisplayName());
+					client.closeSocket();
+				}
+			}
+		}, this.config.getHandshakeTimeout(), TimeUnit.MILLISECONDS);
+	}
+
+	private static void closeQuietly(Socket socket)
+	{
+		try
+		{
+			socket.close();
+		}
+		catch (IOException e)
+		{
+
+		}
+	}
+
+	// Inner classes:
+
+	class SocketHandshake implements Runnable
+	{
+		private Socket socket = null;
+
+		public SocketHandshake(Socket socket)
+		{
+			this.socket = socket;
+		}
+
+		@Override
+		public void run()
+		{
+			ClientModel client = null;
+			ScheduledFuture<?> deadline = null;
+			try
+			{
+				this.socket.setSoTimeout(config.getHandshakeTimeout());
+				client = new ClientModel(new SocketConnection(this.socket, config.getStreamBufferSize(), slowConsumerPolicy, flushPolicy, writerExecutor));
+				deadline = watch(client);
+
+				SocketMessage data = client.getData();
+				deadline.cancel(false);
+				this.socket.setSoTimeout(0);
+
+				if(serverController.handleHandshake(client, data) == false)
+				{
+					client.closeSocket();
+				}
+			}
+			catch (IOException e)
+			{
+				if(deadline != null)
+				{
+					deadline.cancel(false);
+				}
+				closeQuietly(this.socket);
+			}
+		}
+	}
+
+	static class DaemonThreadFactory implements ThreadFactory
+	{
+		private String name = null;
+		private AtomicInteger counter = new AtomicInteger();
+
+		public DaemonThreadFactory(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, this.name + "-" + this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -39,10 +39,17 @@ public class MenuBarController
 	
 	// Default Constructor:
 	
-	public MenuBarController()
+	public MenuBarController(ServerLogModel serverLogModel)
 	{
 		this.serverWindow = ServerWindow.getInstance();
-		this.serverLogModel = new ServerLogModel();
+		if(serverLogModel != null)
+		{
+			this.serverLogModel = serverLogModel;
+		}
+		else
+		{
+			this.serverLogModel = new ServerLogModel();
+		}
 		
 		this.initializeMenu();
 	}
@@ -83,7 +90,7 @@ public class MenuBarController
             int returnValue = fileChooser.showSaveDialog(serverWindow.getContentPane());
             if(returnValue == JFileChooser.APPROVE_OPTION) 
             {
-                serverLogModel.stroreServerLog(fileChooser.getSelectedFile(), serverWindow.getHTMLDocument());
+                serverLogModel.stroreServerLog(fileChooser.getSelectedFile(), serverWindow.getServerLogText());
             }
 		}
 	}
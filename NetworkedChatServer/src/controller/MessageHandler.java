@@ -0,0 +1,28 @@
+/* File: MessageHandler.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is template for handler of one message kind
+ *     received from connected client. Handlers are registered in
+ *     ClientsController table indexed by message kind tag.
+ *
+ */
+
+package controller;
+
+import model.ClientModel;
+import model.SocketMessage;
+
+public interface MessageHandler
+{
+	// Class methods:
+
+	public void handleMessage(ClientModel client, SocketMessage data);
+}
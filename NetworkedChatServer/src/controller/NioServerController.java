@@ -0,0 +1,592 @@
+/* File: NioServerController.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class runs non-blocking server mode. Fixed set of selector
+ *    event loops serves all connected clients: first loop also accepts
+ *    new connections and spreads them between loops, and every loop
+ *    reads, decodes and writes frames for its own channels. Decoded
+ *    messages are passed to ServerController on event loop thread.
+ *    Every loop is shard that owns clients whose session id hashes
+ *    to it: client is moved to its shard after handshake, and shard
+ *    finds it in id table of client registry, which takes no lock
+ *    and no boxed key. Direct message received by one loop
+ *    for client of other shard is passed through single-producer
+ *    single-consumer queue from that loop to that shard, so routing
+ *    between loops takes no lock. When that queue stays full for a
+ *    while, messages go to unbounded overflow queue instead, so two
+ *    loops never wait for each other. Other threads hand direct
+ *    messages to the shard as tasks.
+ *
+ */
+
+package controller;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import model.ChannelConnection;
+import model.ClientModel;
+import model.FlushPolicy;
+import model.SlowConsumerPolicy;
+import model.SocketMessage;
+import model.SpscQueue;
+
+public class NioServerController implements DirectMessageRouter
+{
+	// Controllers:
+	private ServerController serverController = null;
+
+	// Properties:
+	private ServerSocketChannel serverChannel = null;
+	private EventLoop[] eventLoops = null;
+	private int nextEventLoop = 0;
+	private SlowConsumerPolicy slowConsumerPolicy = null;
+	private FlushPolicy flushPolicy = null;
+	private int shardQueueSize = 0;
+	private final ThreadLocal<EventLoop> currentEventLoop = new ThreadLocal<EventLoop>();
+	private static final int ROUTE_RETRIES = 64;
+
+	// Default constructor:
+
+	public NioServerController(ServerController serverController, int eventLoopThreads, int shardQueueSize, SlowConsumerPolicy slowConsumerPolicy, FlushPolicy flushPolicy)
+	{
+		this.serverController = serverController;
+		this.shardQueueSize = shardQueueSize;
+		this.slowConsumerPolicy = slowConsumerPolicy;
+		this.flushPolicy = flushPolicy;
+		this.eventLoops = new EventLoop[eventLoopThreads];
+	}
+
+	// Class methods:
+
+	public void start(ServerSocketChannel serverChannel) throws IOException
+	{
+		this.serverChannel = serverChannel;
+		this.serverChannel.configureBlocking(false);
+
+		for(int i = 0; i < this.eventLoops.length; i++)
+		{
+			this.eventLoops[i] = new EventLoop(i);
+		}
+		this.serverChannel.register(this.eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+
+		for(EventLoop eventLoop : this.eventLoops)
+		{
+			Thread eventLoopThread = new Thread(eventLoop, "EventLoop-" + eventLoop.index);
+			eventLoopThread.start();
+		}
+	}
+
+	public void stop()
+	{
+		for(EventLoop eventLoop : this.eventLoops)
+		{
+			if(eventLoop != null)
+			{
+				eventLoop.shutdown();
+			}
+		}
+		try
+		{
+			if(this.serverChannel != null)
+			{
+				this.serverChannel.close();
+				this.serverChannel = null;
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot close server channel > " + e.getMessage());
+		}
+	}
+
+	// Move client that passed handshake to its shard. Called before
+	// handshake reply is queued, so client sends nothing to old
+	// event loop after it was moved:
+
+	public void assignShard(ClientModel client)
+	{
+		ChannelConnection connection = (ChannelConnection)client.getConnection();
+		EventLoop shard = this.getShard(client.getClientInfo().getClientId());
+		EventLoop owner = this.getOwner(connection);
+		if(owner != null && owner != shard)
+		{
+			owner.execute(new MoveClient(owner, shard, client));
+		}
+	}
+
+	// Deliver direct message on event loop of recipient's shard.
+	// Returns false when recipient's shard is stopped:
+
+	@Override
+	public boolean routeMessage(int recipientId, SocketMessage data)
+	{
+		EventLoop eventLoop = this.currentEventLoop.get();
+		if(eventLoop != null)
+		{
+			eventLoop.route(recipientId, data);
+			return true;
+		}
+		
+		EventLoop shard = this.getShard(recipientId);
+		if(shard == null || shard.running == false)
+		{
+			return false;
+		}
+		shard.execute(new DeliverMessage(shard, recipientId, data));
+		return true;
+	}
+
+	private EventLoop getShard(int clientId)
+	{
+		int hash = clientId * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		return this.eventLoops[Math.floorMod(hash, this.eventLoops.length)];
+	}
+
+	// Returns null when channel is not registered with any loop:
+
+	private EventLoop getOwner(ChannelConnection connection)
+	{
+		SelectionKey key = connection.getSelectionKey();
+		if(key == null)
+		{
+			return null;
+		}
+		for(EventLoop eventLoop : this.eventLoops)
+		{
+			if(eventLoop.selector == key.selector())
+			{
+				return eventLoop;
+			}
+		}
+		return null;
+	}
+
+	private void acceptConnections()
+	{
+		try
+		{
+			SocketChannel channel = null;
+			while((channel = this.serverChannel.accept()) != null)
+			{
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				EventLoop eventLoop = this.eventLoops[this.nextEventLoop];
+				this.nextEventLoop = (this.nextEventLoop + 1) % this.eventLoops.length;
+				ClientModel client = new ClientModel(new ChannelConnection(channel, this.slowConsumerPolicy, this.flushPolicy));
+				eventLoop.register(client);
+				this.serverController.connectionAccepted(client);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot accept new connection > " + e.getMessage());
+		}
+	}
+
+	// Inner classes:
+
+	class EventLoop implements Runnable
+	{
+		private int index = 0;
+		private Selector selector = null;
+		private volatile boolean running = true;
+		private final Queue<ClientModel> pendingClients = new ConcurrentLinkedQueue<ClientModel>();
+		private final Queue<ChannelConnection> writeRequests = new ConcurrentLinkedQueue<ChannelConnection>();
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private final List<SocketMessage> receivedMessages = new ArrayList<SocketMessage>();
+		
+		// Direct messages from every other loop, indexed by sending loop:
+		private SpscQueue<DirectMessage>[] inboxes = null;
+		private Queue<DirectMessage>[] overflows = null;
+		private final AtomicBoolean inboxSignalled = new AtomicBoolean(false);
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public EventLoop(int index) throws IOException
+		{
+			this.index = index;
+			this.selector = Selector.open();
+			this.inboxes = new SpscQueue[eventLoops.length];
+			this.overflows = new Queue[eventLoops.length];
+			for(int i = 0; i < this.inboxes.length; i++)
+			{
+				this.inboxes[i] = new SpscQueue<DirectMessage>(shardQueueSize);
+				this.overflows[i] = new ConcurrentLinkedQueue<DirectMessage>();
+			}
+		}
+
+		public void register(ClientModel client)
+		{
+			this.pendingClients.add(client);
+			this.selector.wakeup();
+		}
+
+		// Run task on this loop:
+
+		public void execute(Runnable task)
+		{
+			this.tasks.add(task);
+			this.selector.wakeup();
+		}
+
+		public void shutdown()
+		{
+			this.running = false;
+			this.selector.wakeup();
+		}
+
+		@Override
+		public void run()
+		{
+			currentEventLoop.set(this);
+			try
+			{
+				while(this.running == true)
+				{
+					this.selector.select();
+					this.registerPendingClients();
+					this.runTasks();
+					this.deliverInboxMessages();
+					this.processWriteRequests();
+
+					Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+					while(keys.hasNext())
+					{
+						SelectionKey key = keys.next();
+						keys.remove();
+
+						if(key.isValid() == false)
+						{
+							continue;
+						}
+						if(key.isAcceptable() == true)
+						{
+							acceptConnections();
+							continue;
+						}
+
+						ClientModel client = (ClientModel)key.attachment();
+						if(key.isReadable() == true)
+						{
+							this.readClient(client);
+						}
+						if(key.isValid() == true && key.isWritable() == true)
+						{
+							this.writeClient(client);
+						}
+					}
+				}
+			}
+			catch (IOException | ClosedSelectorException e)
+			{
+				System.err.println("Server: Event loop " + this.index + " stopped > " + e.getMessage());
+			}
+			this.closeAll();
+		}
+
+		// Called on this loop. Message for client of other shard is
+		// put into queue from this loop to that shard:
+
+		public void route(int recipientId, SocketMessage data)
+		{
+			EventLoop shard = getShard(recipientId);
+			if(shard == this)
+			{
+				this.deliver(recipientId, data);
+				return;
+			}
+			
+			if(shard.running == false)
+			{
+				return;
+			}
+			
+			// Once message waits in overflow queue, later messages follow
+			// it there, so shard gets messages from this loop in order:
+			
+			DirectMessage message = new DirectMessage(recipientId, data);
+			SpscQueue<DirectMessage> inbox = shard.inboxes[this.index];
+			Queue<DirectMessage> overflow = shard.overflows[this.index];
+			boolean queued = false;
+			if(overflow.isEmpty() == true)
+			{
+				queued = inbox.offer(message);
+				for(int retry = 0; queued == false && retry < ROUTE_RETRIES; retry++)
+				{
+					// Full shard may be waiting for this loop as well, so
+					// this loop keeps delivering its own messages meanwhile:
+					this.deliverInboxMessages();
+					Thread.yield();
+					queued = inbox.offer(message);
+				}
+			}
+			if(queued == false)
+			{
+				overflow.add(message);
+			}
+			shard.signalInbox();
+		}
+
+		// Selector is woken up only once for all messages that
+		// arrive before this loop gets to them:
+
+		private void signalInbox()
+		{
+			if(this.inboxSignalled.compareAndSet(false, true) == true)
+			{
+				this.selector.wakeup();
+			}
+		}
+
+		private void deliverInboxMessages()
+		{
+			this.inboxSignalled.set(false);
+			for(int i = 0; i < this.inboxes.length; i++)
+			{
+				while(true)
+				{
+					// Sender puts nothing into inbox while its overflow queue
+					// is not empty, so when overflow was seen before inbox was
+					// found empty, head of overflow is next message:
+					boolean overflowing = this.overflows[i].isEmpty() == false;
+					DirectMessage message = this.inboxes[i].poll();
+					if(message == null && overflowing == true)
+					{
+						message = this.overflows[i].poll();
+					}
+					if(message == null)
+					{
+						break;
+					}
+					this.deliver(message.recipientId, message.data);
+				}
+			}
+		}
+
+		// Recipient is looked up in registry, which also keeps
+		// message for client that left:
+
+		private void deliver(int recipientId, SocketMessage data)
+		{
+			serverController.deliverMessage(recipientId, data);
+		}
+
+		private void runTasks()
+		{
+			Runnable task = null;
+			while((task = this.tasks.poll()) != null)
+			{
+				task.run();
+			}
+		}
+
+		private void registerPendingClients()
+		{
+			ClientModel client = null;
+			while((client = this.pendingClients.poll()) != null)
+			{
+				ChannelConnection connection = (ChannelConnection)client.getConnection();
+				try
+				{
+					SelectionKey key = connection.getChannel().register(this.selector, SelectionKey.OP_READ, client);
+					connection.setEventLoop(key, this.writeRequests);
+				}
+				catch (IOException e)
+				{
+					System.err.println("Server: Cannot register client channel > " + e.getMessage());
+					this.closeClient(client);
+				}
+			}
+		}
+
+		private void processWriteRequests()
+		{
+			ChannelConnection connection = null;
+			while((connection = this.writeRequests.poll()) != null)
+			{
+				this.writeClient((ClientModel)connection.getSelectionKey().attachment());
+			}
+		}
+
+		private void readClient(ClientModel client)
+		{
+			ChannelConnection connection = (ChannelConnection)client.getConnection();
+			try
+			{
+				connection.readData(this.receivedMessages);
+				for(SocketMessage data : this.receivedMessages)
+				{
+					serverController.processData(client, data);
+				}
+			}
+			catch (IOException e)
+			{
+				this.closeClient(client);
+			}
+			finally
+			{
+				this.receivedMessages.clear();
+			}
+		}
+
+		// Write request left by connection that was moved to other
+		// loop is ignored, new loop writes its frames:
+
+		private void writeClient(ClientModel client)
+		{
+			ChannelConnection connection = (ChannelConnection)client.getConnection();
+			SelectionKey key = connection.getSelectionKey();
+			if(key.selector() != this.selector || key.isValid() == false)
+			{
+				return;
+			}
+			try
+			{
+				if(connection.writeData() == true)
+				{
+					if(connection.isCloseRequested() == true)
+					{
+						this.closeClient(client);
+						return;
+					}
+					key.interestOps(SelectionKey.OP_READ);
+					connection.writeCompleted();
+				}
+				else
+				{
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			}
+			catch (IOException e)
+			{
+				this.closeClient(client);
+			}
+		}
+
+		// Close channel and remove client from chat:
+
+		private void closeClient(ClientModel client)
+		{
+			this.closeChannel((ChannelConnection)client.getConnection());
+			serverController.connectionClosed(client);
+		}
+
+		private void closeChannel(ChannelConnection connection)
+		{
+			try
+			{
+				if(connection.getSelectionKey() != null)
+				{
+					connection.getSelectionKey().cancel();
+				}
+				connection.getChannel().close();
+			}
+			catch (IOException e)
+			{
+				System.err.println("Server: Cannot close client channel > " + e.getMessage());
+			}
+		}
+
+		private void closeAll()
+		{
+			this.processWriteRequests();
+			for(SelectionKey key : this.selector.keys())
+			{
+				if(key.attachment() instanceof ClientModel)
+				{
+					this.closeChannel((ChannelConnection)((ClientModel)key.attachment()).getConnection());
+				}
+			}
+			try
+			{
+				this.selector.close();
+			}
+			catch (IOException e)
+			{
+				System.err.println("Server: Cannot close selector > " + e.getMessage());
+			}
+		}
+	}
+
+	static class DirectMessage
+	{
+		private int recipientId = 0;
+		private SocketMessage data = null;
+
+		public DirectMessage(int recipientId, SocketMessage data)
+		{
+			this.recipientId = recipientId;
+			this.data = data;
+		}
+	}
+
+	// Direct message passed to shard by thread that is not event loop:
+
+	class DeliverMessage implements Runnable
+	{
+		private EventLoop shard = null;
+		private int recipientId = 0;
+		private SocketMessage data = null;
+
+		public DeliverMessage(EventLoop shard, int recipientId, SocketMessage data)
+		{
+			this.shard = shard;
+			this.recipientId = recipientId;
+			this.data = data;
+		}
+
+		@Override
+		public void run()
+		{
+			this.shard.deliver(this.recipientId, this.data);
+		}
+	}
+
+	// Run on loop that owns channel: channel is taken from its
+	// selector and registered with selector of client's shard:
+
+	class MoveClient implements Runnable
+	{
+		private EventLoop owner = null;
+		private EventLoop shard = null;
+		private ClientModel client = null;
+
+		public MoveClient(EventLoop owner, EventLoop shard, ClientModel client)
+		{
+			this.owner = owner;
+			this.shard = shard;
+			this.client = client;
+		}
+
+		@Override
+		public void run()
+		{
+			SelectionKey key = ((ChannelConnection)this.client.getConnection()).getSelectionKey();
+			if(key.selector() != this.owner.selector || key.isValid() == false)
+			{
+				return;
+			}
+			key.cancel();
+			this.shard.register(this.client);
+		}
+	}
+}
@@ -13,7 +13,8 @@
  *    it listens for every new client that wants to connect to it
  *    check all connection requirements and if everything is OK, it 
  *    creates new tread to for that particular client and wait for 
- *    new connection.
+ *    new connection. Server can be controlled from ServerWindow or
+ *    run headless, in which case status goes only to status sink.
  * 
  */
 
@@ -22,43 +23,115 @@ package controller;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import java.io.File;
 import java.io.IOException;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
 
 import model.ClientModel;
+import model.ClientRegistry;
+import model.FlushPolicy;
 import model.HandshakeMessage;
+import model.MessageCodec;
+import model.MessageKind;
+import model.OfflineMessageStore;
+import model.RoomIndex;
+import model.ServerConfig;
+import model.ServerLogModel;
+import model.ServerStatusSink;
+import model.SlowConsumerPolicy;
 import model.SocketMessage;
-import model.ClientUpdateMessage;
+import model.SocketMessageCodec;
 import view.ServerWindow;
 
 public class ServerController 
 {
 	// Models:
-	
+	private ServerStatusSink statusSink = null;
+	private ServerLogModel serverLogModel = null;
+	private OfflineMessageStore offlineStore = null;
 	
 	// Views:
 	private ServerWindow serverWindow = null;
 	
 	// Controllers:
+	private ServerLogController serverLog = null;
 	private ClientsController connectionController = null;
 	private MenuBarController menuBarController = null;
+	private NioServerController nioServerController = null;
+	private HandshakeController handshakeController = null;
+	private ClusterController clusterController = null;
 	
 	// Properties:
+	private ServerConfig config = null;
+	private ExecutorService clientExecutor = null;
 	private ServerSocket serverSocket = null;
 	private String serverIP = null;
 	private int serverPort = -1;
 	
 	// Default constructor:
-	public ServerController()
+	public ServerController(ServerConfig config, ServerStatusSink statusSink)
 	{
-		this.serverWindow = ServerWindow.getInstance();
-		this.menuBarController = new MenuBarController();
-		this.serverWindow.addBtnStartServerActionListener(new StartServer());
-		this.serverWindow.addBtnStopServerActionListener(new StopServer());
-		this.connectionController = new ClientsController();
+		this.config = config;
+		this.statusSink = statusSink;
+		this.serverLog = new ServerLogController(config);
+		if(config.getLogFile() != null)
+		{
+			try
+			{
+				this.serverLogModel = new ServerLogModel(new File(config.getLogFile()), config.getLogMaxSize() * 1024L * 1024L, config.getLogRotateInterval() * 60000L, config.isLogCompress());
+				this.serverLog.addSink(this.serverLogModel);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Server: Cannot open log file " + config.getLogFile() + " > " + e.getMessage());
+			}
+		}
+		this.clientExecutor = ExecutorFactory.createClientExecutor(config.getExecutionMode());
+		SlowConsumerPolicy slowConsumerPolicy = new SlowConsumerPolicy(config.getSlowConsumerAction(), config.getOutboundQueueSize(), config.getOutboundQueueLimit() * 1024L);
+		BroadcastFanOut fanOut = new BroadcastFanOut(config.getFanOutThreads(), config.getFanOutStripe());
+		RoomIndex rooms = new RoomIndex(config.getMaxRoomsPerClient());
+		this.connectionController = new ClientsController(this.clientExecutor, new ClientRegistry(config.getNodeId()), fanOut, rooms, slowConsumerPolicy, statusSink, this.serverLog);
+		FlushPolicy flushPolicy = new FlushPolicy(config.getFlushMode(), config.getFlushDelay());
+		this.nioServerController = new NioServerController(this, config.getEventLoopThreads(), config.getShardQueueSize(), slowConsumerPolicy, flushPolicy);
+		if(config.getExecutionMode() == ServerConfig.ExecutionMode.NIO)
+		{
+			this.connectionController.setMessageRouter(this.nioServerController);
+		}
+		if(config.getOfflineDirectory() != null)
+		{
+			// Stored messages are all sent when recipient joins, so they
+			// have to fit into half of its outbound queue:
+			
+			int maxMessages = config.getOfflineMaxMessages();
+			int queueLimit = Math.max(1, config.getOutboundQueueSize() / 2);
+			if(maxMessages > queueLimit)
+			{
+				System.err.println("Server: Offline max messages " + maxMessages + " lowered to " + queueLimit + ", half of outbound queue");
+				maxMessages = queueLimit;
+			}
+			try
+			{
+				this.offlineStore = new OfflineMessageStore(Paths.get(config.getOfflineDirectory()), config.getOfflineSegmentSize() * 1024 * 1024, config.getOfflineMaxSize() * 1024L * 1024L, config.getOfflineTimeToLive() * 60000L, maxMessages);
+				this.connectionController.setOfflineStore(this.offlineStore);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Server: Cannot open offline message store " + config.getOfflineDirectory() + " > " + e.getMessage());
+			}
+		}
+		if(config.isClusterEnabled() == true)
+		{
+			this.clusterController = new ClusterController(this.connectionController, config, this.serverLog);
+			this.connectionController.setCluster(this.clusterController);
+		}
+		this.handshakeController = new HandshakeController(this, config, slowConsumerPolicy, flushPolicy, this.clientExecutor);
 		
 		this.initializeServer();
 	}
@@ -77,6 +150,31 @@ public class ServerController
 		}
 	}
 	
+	public String getServerIP()
+	{
+		return this.serverIP;
+	}
+	
+	public ServerLogController getServerLog()
+	{
+		return this.serverLog;
+	}
+	
+	// Returns null when server log is not written to file:
+	
+	public ServerLogModel getServerLogModel()
+	{
+		return this.serverLogModel;
+	}
+	
+	// Returns null when messages for clients that are not connected
+	// are not stored:
+	
+	public OfflineMessageStore getOfflineStore()
+	{
+		return this.offlineStore;
+	}
+	
 	// Setter methods:
 	
 	
@@ -84,23 +182,252 @@ public class ServerController
 	
 	private void initializeServer() 
 	{
-		InetAddress hostIPAddress = null;
+		if(this.config.getBindAddress() != null)
+		{
+			this.serverIP = this.config.getBindAddress();
+			return;
+		}
 		
 		try 
 		{
-			hostIPAddress = InetAddress.getLocalHost();
+			this.serverIP = InetAddress.getLocalHost().getHostAddress();
 		} 
 		catch (UnknownHostException e) 
 		{
 			System.err.println("Cannot find host: " + e.getMessage());
+			this.serverIP = InetAddress.getLoopbackAddress().getHostAddress();
+		}
+	}
+	
+	// Attach server window, so server can be started and stopped
+	// from GUI:
+	
+	public void initializeWindow(ServerWindow serverWindow)
+	{
+		this.serverWindow = serverWindow;
+		this.menuBarController = new MenuBarController(this.serverLogModel);
+		this.serverWindow.addBtnStartServerActionListener(new StartServer());
+		this.serverWindow.addBtnStopServerActionListener(new StopServer());
+		this.serverWindow.setServerIPField(this.serverIP);
+		if(this.config.getPort() > 0)
+		{
+			this.serverWindow.setServerPortField(this.config.getPort());
 		}
-		
-		this.serverWindow.setServerIPField(hostIPAddress.getHostAddress());
-		this.serverIP = hostIPAddress.getHostAddress();
 		
 		this.serverWindow.setVisible(true);
 	}
 	
+	public boolean startServer(int port)
+	{
+		this.serverPort = port;
+		try 
+		{
+			this.openServerSocket();
+			this.serverPort = this.getServerPort();
+			if(this.clusterController != null)
+			{
+				this.clusterController.start();
+			}
+			this.serverLog.log("Server has been started", false);
+		} 
+		catch (IOException e) 
+		{
+			System.err.println("Server: Cannot create new server socket: " + e.getMessage());
+			this.statusSink.setStatusMessage("Cannot start server on port " + port + " ...");
+			return false;
+		}
+		
+		this.statusSink.setStatusMessage("Listening connections on IP: " + this.serverIP + ":" + this.serverPort + " ...");
+		return true;
+	}
+	
+	public void stopServer()
+	{
+		if(this.clusterController != null)
+		{
+			this.clusterController.stop();
+		}
+		this.connectionController.closeAllConnections();
+		this.nioServerController.stop();
+		if(this.offlineStore != null)
+		{
+			this.offlineStore.flush();
+		}
+		
+		if(this.serverSocket != null) 
+		{
+			try 
+			{
+				this.serverSocket.close();
+				this.serverSocket = null;
+				this.serverLog.log("Server has been stopped", true);
+			} 
+			catch (IOException e) 
+			{
+				System.err.println("Server: Cannot close server socket >" + e.getMessage());
+			}
+		}
+		
+		this.statusSink.setStatusMessage("Server has been stopped ...");
+	}
+	
+	// Stop server before process exits, and write what is left in
+	// server log and offline message store:
+	
+	public void shutdown()
+	{
+		this.stopServer();
+		this.serverLog.shutdown();
+		if(this.serverLogModel != null)
+		{
+			this.serverLogModel.close();
+		}
+		if(this.offlineStore != null)
+		{
+			this.offlineStore.close();
+		}
+	}
+	
+	private void openServerSocket() throws IOException
+	{
+		InetSocketAddress address = null;
+		if(this.config.getBindAddress() != null)
+		{
+			address = new InetSocketAddress(this.config.getBindAddress(), this.serverPort);
+		}
+		else
+		{
+			address = new InetSocketAddress(this.serverPort);
+		}
+		
+		if(this.config.getExecutionMode() == ServerConfig.ExecutionMode.NIO)
+		{
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(address, this.config.getBacklog());
+			this.serverSocket = serverChannel.socket();
+			this.nioServerController.start(serverChannel);
+		}
+		else
+		{
+			this.serverSocket = new ServerSocket();
+			this.serverSocket.bind(address, this.config.getBacklog());
+			this.clientExecutor.execute(new WaitForClientsThread());
+		}
+	}
+	
+	// Start handshake deadline for connection accepted by event loop:
+	
+	void connectionAccepted(ClientModel client)
+	{
+		this.handshakeController.watch(client);
+	}
+	
+	// Route message received from client. First message from every
+	// client has to be handshake, and it is checked on handshake worker:
+	
+	void processData(ClientModel client, SocketMessage data)
+	{
+		if(client.getClientInfo() == null)
+		{
+			if(client.startHandshake() == true)
+			{
+				this.handshakeController.processHandshake(client, data);
+			}
+		}
+		else
+		{
+			this.connectionController.processMessage(client, data);
+		}
+	}
+	
+	// Deliver direct message on event loop of recipient's shard.
+	// Recipient is found by id in client registry:
+	
+	void deliverMessage(int recipientId, SocketMessage data)
+	{
+		this.connectionController.deliverMessage(recipientId, data);
+	}
+	
+	void connectionClosed(ClientModel client)
+	{
+		if(client.getClientInfo() == null)
+		{
+			client.closeSocket();
+		}
+		else
+		{
+			this.connectionController.clientDisconnected(client);
+		}
+	}
+	
+	// Check handshake and accept client if its name is not taken.
+	// Returns false if client has to be disconnected:
+	
+	boolean handleHandshake(ClientModel client, SocketMessage data)
+	{
+		if(data.getMessageKind() != MessageKind.HANDSHAKE)
+		{
+			return false;
+		}
+		
+		serverLog.log(false, "Received handshake from {}", data.getSenderName(), null);
+		
+		HandshakeMessage connectionMessage = (HandshakeMessage)data;
+		
+		// Every client understands serialized format, so it is used
+		// when client and server do not prefer the same format:
+		
+		MessageCodec messageCodec = this.config.getWireFormat();
+		if(connectionMessage.getWireFormat() != messageCodec.getFormat())
+		{
+			messageCodec = SocketMessageCodec.SERIALIZED;
+		}
+		connectionMessage.setWireFormat(messageCodec.getFormat());
+		client.setMessageCodec(messageCodec);
+		
+		connectionMessage.setCompression(connectionMessage.isCompression() == true && this.config.isCompression() == true);
+		client.setCompressionEnabled(connectionMessage.isCompression());
+		
+		// Handshakes run in parallel, name is reserved atomically,
+		// so only one of clients with the same name gets it:
+		
+		if(connectionController.reserveUsername(connectionMessage.getSenderName(), client) == true)
+		{
+			connectionMessage.setValidName(true);
+			
+			client.setUserInfo(connectionMessage.getSenderInfo());
+			connectionController.assignClientId(client);
+			if(client.isBlocking() == false)
+			{
+				this.nioServerController.assignShard(client);
+			}
+			client.sendData(data);
+			
+			connectionController.addObserver(client);
+			
+			// Connection lost during handshake was not seen as client
+			// leaving chat, so it is removed here:
+			
+			if(client.isConnected() == false)
+			{
+				connectionController.clientDisconnected(client);
+				return false;
+			}
+			
+			connectionController.newClientNotification(connectionMessage.getSenderName());
+			return true;
+		}
+		else
+		{
+			connectionMessage.setValidName(false);
+			
+			client.sendData(data);
+			
+			serverLog.log(false, "Client with {} already exists. Notifying client ...", data.getSenderName(), null);
+			return false;
+		}
+	}
+	
 	
 	// Inner classes:
 	
@@ -111,25 +438,15 @@ public class ServerController
 		{
 			if(serverWindow.isInputFieldsValid() == true) 
 			{
-				serverPort = Integer.parseInt(serverWindow.getServerPortField());
 				serverWindow.setServerInputState(false);
-					
-				try 
+				if(startServer(Integer.parseInt(serverWindow.getServerPortField())) == true)
 				{
-					serverSocket = new ServerSocket(serverPort);
-					serverPort = getServerPort();
 					serverWindow.setServerPortField(serverPort);
-					
-					new Thread(new WaitForClientsThread()).start();
-					
-					serverWindow.addMessage("Server has been started", false);
-				} 
-				catch (IOException e) 
+				}
+				else
 				{
-					System.err.println("Server: Cannot create new server socket: " + e.getMessage());
+					serverWindow.setServerInputState(true);
 				}
-				
-				serverWindow.setStatusMessage("Listening connections on IP: " + serverIP + ":" + serverPort + " ...");
 			}
 			else 
 			{
@@ -145,23 +462,7 @@ public class ServerController
 		@Override
 		public void actionPerformed(ActionEvent event) 
 		{
-			connectionController.closeAllConnections();
-			
-			if(serverSocket != null) 
-			{
-				try 
-				{
-					serverSocket.close();
-					serverSocket = null;
-					serverWindow.addMessage("Server has been stopped", true);
-				} 
-				catch (IOException e) 
-				{
-					System.err.println("Server: Cannot close server socket >" + e.getMessage());
-				}
-			}
-		
-			serverWindow.setStatusMessage("Server has been stopped ...");
+			stopServer();
 			serverWindow.setServerInputState(true);
 		}
 	}
@@ -171,45 +472,12 @@ public class ServerController
 		@Override
 		public void run() 
 		{
+			serverLog.log("Listening for new connection ...", false);
 			while(serverSocket != null)
 			{
 				try 
 				{
-					serverWindow.addMessage("Listening for new connection ...", false);
-					
-					ClientModel client = new ClientModel();
-					client.setClientSocket(serverSocket.accept());
-					client.setConnection();
-					
-					SocketMessage data = client.getData();
-					
-					if(data.getMessageType().equals("HandshakeMessage") == true)
-					{
-						serverWindow.addMessage("Received handshake from " + data.getSenderName(), false);
-						
-						HandshakeMessage connectionMessage = (HandshakeMessage)data;
-						
-						if(connectionController.isUsernameValid(connectionMessage.getSenderName()) == true)
-						{
-							connectionMessage.setValidName(true);
-							
-							client.setUserInfo(connectionMessage.getSenderInfo());
-							client.sendData(data);
-							
-							connectionController.addObserver(client);
-							connectionController.newClientNotification(connectionMessage.getSenderName());
-							connectionController.updateObservers(new ClientUpdateMessage(connectionController.getActiveUserList()));
-						}
-						else
-						{
-							connectionMessage.setValidName(false);
-							
-							client.sendData(data);
-							client.closeSocket();
-							
-							serverWindow.addMessage("Client with  " + data.getSenderName() + " already exists. Notifying client ..." , false);
-						}
-					}
+					handshakeController.acceptSocket(serverSocket.accept());
 				} 
 				catch (IOException e) 
 				{ 
@@ -0,0 +1,310 @@
+/* File: ServerLogController.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is asynchronous server log. Threads that log only
+ *    claim pre-allocated slot of lock-free ring buffer and store message
+ *    pattern with its arguments there. Single consumer thread formats
+ *    events in batches and passes them to log sinks (server window,
+ *    console, log file). Frequent per-message lines can go through
+ *    sampler, which passes only limited number of lines per second and
+ *    reports the rest as aggregated count.
+ *
+ */
+
+package controller;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import model.LogRecord;
+import model.LogSink;
+import model.ServerConfig;
+
+public class ServerLogController implements Runnable
+{
+	// Properties:
+
+	private static final int MAX_BATCH = 1024;
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private LogEvent[] ring = null;
+	private int mask = 0;
+	private final AtomicLong claimSequence = new AtomicLong(0);
+	private volatile long readSequence = 0;
+	private final LongAdder droppedEvents = new LongAdder();
+
+	private final List<LogSink> sinks = new CopyOnWriteArrayList<LogSink>();
+	private final List<Sampler> samplers = new CopyOnWriteArrayList<Sampler>();
+	private int sampleRate = 0;
+
+	private Thread consumerThread = null;
+	private volatile boolean running = true;
+
+	// Used only by consumer thread:
+	private final SimpleDateFormat dateAndTime = new SimpleDateFormat ("MM/dd/yyyy hh:mm:ss");
+	private long formattedSecond = -1;
+	private String formattedTime = null;
+
+	// Default constructor:
+
+	public ServerLogController(ServerConfig config)
+	{
+		int capacity = Integer.highestOneBit(config.getLogBufferSize() - 1) << 1;
+		this.ring = new LogEvent[capacity];
+		this.mask = capacity - 1;
+		for(int i = 0; i < capacity; i++)
+		{
+			this.ring[i] = new LogEvent();
+		}
+		this.sampleRate = config.getLogSampleRate();
+
+		this.consumerThread = new Thread(this, "ServerLog");
+		this.consumerThread.setDaemon(true);
+		this.consumerThread.start();
+	}
+
+	// Class methods:
+
+	public void addSink(LogSink sink)
+	{
+		this.sinks.add(sink);
+	}
+
+	public void removeSink(LogSink sink)
+	{
+		this.sinks.remove(sink);
+	}
+
+	// Create sampler for one kind of frequent log lines, for example
+	// "forwarded messages":
+
+	public Sampler createSampler(String category)
+	{
+		Sampler sampler = new Sampler(category, this.sampleRate);
+		this.samplers.add(sampler);
+		return sampler;
+	}
+
+	public void log(String message, boolean important)
+	{
+		this.log(important, message, null, null);
+	}
+
+	// Log message pattern, where "{}" are replaced by arguments
+	// on consumer thread. Event is dropped if ring buffer is full,
+	// so logging never blocks caller:
+
+	public void log(boolean important, String pattern, Object firstArgument, Object secondArgument)
+	{
+		long sequence = 0;
+		do
+		{
+			sequence = this.claimSequence.get();
+			if(sequence - this.readSequence >= this.ring.length)
+			{
+				this.droppedEvents.increment();
+				return;
+			}
+		}
+		while(this.claimSequence.compareAndSet(sequence, sequence + 1) == false);
+
+		LogEvent event = this.ring[(int)sequence & this.mask];
+		event.timeMillis = System.currentTimeMillis();
+		event.important = important;
+		event.pattern = pattern;
+		event.firstArgument = firstArgument;
+		event.secondArgument = secondArgument;
+		event.published = sequence;
+	}
+
+	// Stop consumer thread after it delivered already logged events:
+
+	public void shutdown()
+	{
+		this.running = false;
+		LockSupport.unpark(this.consumerThread);
+		try
+		{
+			this.consumerThread.join(1000);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		List<LogRecord> batch = new ArrayList<LogRecord>();
+		while(true)
+		{
+			long sequence = this.readSequence;
+			while(batch.size() < MAX_BATCH)
+			{
+				LogEvent event = this.ring[(int)sequence & this.mask];
+				if(event.published != sequence)
+				{
+					break;
+				}
+				batch.add(new LogRecord(event.timeMillis, this.formatTime(event.timeMillis), event.format(), event.important));
+				event.clear();
+				sequence++;
+				this.readSequence = sequence;
+			}
+
+			long now = System.currentTimeMillis();
+			for(Sampler sampler : this.samplers)
+			{
+				sampler.roll(now, batch);
+			}
+			long dropped = this.droppedEvents.sumThenReset();
+			if(dropped > 0)
+			{
+				batch.add(new LogRecord(now, this.formatTime(now), dropped + " log messages were dropped because log buffer was full", true));
+			}
+
+			if(batch.isEmpty() == false)
+			{
+				this.deliver(batch);
+				batch.clear();
+			}
+			else if(this.running == false)
+			{
+				return;
+			}
+			else
+			{
+				LockSupport.parkNanos(IDLE_WAIT);
+			}
+		}
+	}
+
+	private void deliver(List<LogRecord> batch)
+	{
+		List<LogRecord> records = new ArrayList<LogRecord>(batch);
+		for(LogSink sink : this.sinks)
+		{
+			try
+			{
+				sink.writeLog(records);
+			}
+			catch (RuntimeException e)
+			{
+				System.err.println("Server: Log sink failed > " + e.getMessage());
+			}
+		}
+	}
+
+	// Timestamp text changes only once per second, so it is reused:
+
+	private String formatTime(long timeMillis)
+	{
+		long second = timeMillis / 1000;
+		if(second != this.formattedSecond)
+		{
+			this.formattedSecond = second;
+			this.formattedTime = this.dateAndTime.format(new Date(timeMillis));
+		}
+		return this.formattedTime;
+	}
+
+	// Inner classes:
+
+	static class LogEvent
+	{
+		// Sequence of event stored in this slot. Written last by producer,
+		// so consumer sees other fields once it sees the sequence:
+		volatile long published = -1;
+
+		long timeMillis = 0;
+		boolean important = false;
+		String pattern = null;
+		Object firstArgument = null;
+		Object secondArgument = null;
+
+		String format()
+		{
+			StringBuilder message = new StringBuilder(this.pattern.length() + 32);
+			Object[] arguments = {this.firstArgument, this.secondArgument};
+			int argument = 0;
+			int start = 0;
+			int placeholder = 0;
+			while(argument < arguments.length && (placeholder = this.pattern.indexOf("{}", start)) >= 0)
+			{
+				message.append(this.pattern, start, placeholder).append(arguments[argument++]);
+				start = placeholder + 2;
+			}
+			message.append(this.pattern, start, this.pattern.length());
+			return message.toString();
+		}
+
+		void clear()
+		{
+			this.pattern = null;
+			this.firstArgument = null;
+			this.secondArgument = null;
+		}
+	}
+
+	public class Sampler
+	{
+		private String category = null;
+		private int linesPerSecond = 0;
+		private final AtomicInteger emitted = new AtomicInteger();
+		private final LongAdder suppressed = new LongAdder();
+		private long windowStart = 0;
+
+		Sampler(String category, int linesPerSecond)
+		{
+			this.category = category;
+			this.linesPerSecond = linesPerSecond;
+		}
+
+		public void log(boolean important, String pattern, Object firstArgument, Object secondArgument)
+		{
+			if(this.linesPerSecond <= 0 || this.emitted.incrementAndGet() <= this.linesPerSecond)
+			{
+				ServerLogController.this.log(important, pattern, firstArgument, secondArgument);
+			}
+			else
+			{
+				this.suppressed.increment();
+			}
+		}
+
+		// Called by consumer thread, starts new one second window
+		// and reports lines suppressed in previous one:
+
+		void roll(long now, List<LogRecord> batch)
+		{
+			if(now - this.windowStart < 1000)
+			{
+				return;
+			}
+			this.windowStart = now;
+			this.emitted.set(0);
+			long count = this.suppressed.sumThenReset();
+			if(count > 0)
+			{
+				batch.add(new LogRecord(now, formatTime(now), count + " more " + this.category + " in last second", false));
+			}
+		}
+	}
+}
@@ -0,0 +1,334 @@
+/* File: ChannelConnection.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is non-blocking client connection. It is owned by
+ *    one selector event loop, which calls readData() when channel
+ *    is readable and writeData() when outgoing frames are queued.
+ *    Other threads only append frames to write queue and ask owning
+ *    event loop to drain it. Queued frames are written with one
+ *    gathering write, and flush policy decides if owning event loop
+ *    is woken up right away or after short delay. Client that does
+ *    not read fast enough is handled by slow consumer policy of its
+ *    write queue. Connection can be moved to other event loop, which
+ *    owns it from its registration on.
+ *
+ */
+
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ChannelConnection implements ClientConnection
+{
+	// Properties:
+
+	private static final int INITIAL_READ_BUFFER = 16 * 1024;
+	private static final int MAX_GATHER_FRAMES = 64;
+
+	private SocketChannel channel = null;
+	private volatile SelectionKey selectionKey = null;
+	private volatile Queue<ChannelConnection> writeRequests = null;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+	private OutboundQueue writeQueue = null;
+	private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+	private final Runnable delayedWrite = new DelayedWrite();
+	private FlushPolicy flushPolicy = null;
+	private volatile long lastWriteTime = 0;
+	
+	// Frames taken from write queue, only used by owning event loop:
+	private final ByteBuffer[] gatherBuffers = new ByteBuffer[MAX_GATHER_FRAMES];
+	private int gatherCount = 0;
+	private volatile boolean closeRequested = false;
+	private volatile MessageCodec messageCodec = SocketMessageCodec.BINARY;
+	private volatile boolean compressionEnabled = false;
+	private String remoteAddress = null;
+
+	// Default constructor:
+
+	public ChannelConnection(SocketChannel channel, SlowConsumerPolicy slowConsumerPolicy, FlushPolicy flushPolicy)
+	{
+		this.channel = channel;
+		this.writeQueue = new OutboundQueue(slowConsumerPolicy);
+		this.flushPolicy = flushPolicy;
+		try
+		{
+			this.remoteAddress = channel.getRemoteAddress().toString();
+		}
+		catch (IOException e)
+		{
+			this.remoteAddress = "unknown";
+		}
+	}
+
+	// Getter methods:
+
+	public SocketChannel getChannel()
+	{
+		return this.channel;
+	}
+
+	public SelectionKey getSelectionKey()
+	{
+		return this.selectionKey;
+	}
+
+	public boolean isCloseRequested()
+	{
+		return this.closeRequested;
+	}
+
+	@Override
+	public OutboundQueue getOutboundQueue()
+	{
+		return this.writeQueue;
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return this.closeRequested == false && this.channel.isOpen();
+	}
+
+	@Override
+	public String getRemoteAddress()
+	{
+		return this.remoteAddress;
+	}
+
+	@Override
+	public MessageCodec getMessageCodec()
+	{
+		return this.messageCodec;
+	}
+
+	@Override
+	public boolean isCompressionEnabled()
+	{
+		return this.compressionEnabled;
+	}
+
+	// Setter methods:
+
+	// Called by owning event loop after channel was registered
+	// with its selector. Connection moved from other event loop may
+	// have write request left there, so it is requested again here:
+
+	public void setEventLoop(SelectionKey selectionKey, Queue<ChannelConnection> writeRequests)
+	{
+		this.selectionKey = selectionKey;
+		this.writeRequests = writeRequests;
+		this.writeScheduled.set(false);
+		if(this.writeQueue.isEmpty() == false || this.gatherCount > 0 || this.closeRequested == true)
+		{
+			this.scheduleWrite();
+		}
+	}
+
+	@Override
+	public void setMessageCodec(MessageCodec messageCodec)
+	{
+		this.messageCodec = messageCodec;
+	}
+
+	@Override
+	public void setCompressionEnabled(boolean compressionEnabled)
+	{
+		this.compressionEnabled = compressionEnabled;
+	}
+
+	// Class methods:
+
+	@Override
+	public void sendData(SocketMessage data)
+	{
+		if(this.isOpen() == false)
+		{
+			return;
+		}
+		try
+		{
+			this.sendFrame(SocketMessageCodec.encode(data, this.messageCodec, this.compressionEnabled), data);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Client " + this.remoteAddress + ": Cannot encode message > " + e.getMessage());
+		}
+	}
+
+	// Frame array is only wrapped, so the same frame can be queued
+	// for several connections:
+
+	@Override
+	public void sendFrame(byte[] frame, SocketMessage data)
+	{
+		if(this.isOpen() == false)
+		{
+			return;
+		}
+		if(this.writeQueue.offer(frame, data) == false)
+		{
+			System.err.println("Client " + this.remoteAddress + ": Outbound queue is full, disconnecting slow client");
+			this.abortConnection();
+			return;
+		}
+		this.scheduleWrite();
+	}
+
+	// Close is done by owning event loop after already queued
+	// frames (for example shut down notification) are written:
+
+	@Override
+	public void closeConnection()
+	{
+		this.closeRequested = true;
+		this.scheduleWrite();
+	}
+
+	// Drop queued frames and let owning event loop close channel:
+
+	private void abortConnection()
+	{
+		this.closeRequested = true;
+		this.writeQueue.clear();
+		this.scheduleWrite();
+	}
+
+	// Read available bytes and decode all complete frames.
+	// Throws EOFException when client closed connection:
+
+	public void readData(List<SocketMessage> messages) throws IOException
+	{
+		if(this.channel.read(this.readBuffer) < 0)
+		{
+			throw new EOFException("Client closed connection");
+		}
+
+		this.readBuffer.flip();
+		while(this.readBuffer.remaining() >= SocketMessageCodec.HEADER_LENGTH)
+		{
+			int start = this.readBuffer.position();
+			int length = SocketMessageCodec.checkFrameLength(this.readBuffer.getInt(start));
+			if(this.readBuffer.remaining() < SocketMessageCodec.HEADER_LENGTH + length)
+			{
+				this.ensureReadCapacity(SocketMessageCodec.HEADER_LENGTH + length);
+				break;
+			}
+			messages.add(SocketMessageCodec.decode(this.readBuffer.array(), this.readBuffer.arrayOffset() + start + SocketMessageCodec.HEADER_LENGTH, length));
+			this.readBuffer.position(start + SocketMessageCodec.HEADER_LENGTH + length);
+		}
+		this.readBuffer.compact();
+	}
+
+	// Write as much of queued frames as socket accepts, several
+	// frames per system call. Returns true when write queue was drained:
+
+	public boolean writeData() throws IOException
+	{
+		while(true)
+		{
+			byte[] frame = null;
+			while(this.gatherCount < MAX_GATHER_FRAMES && (frame = this.writeQueue.poll()) != null)
+			{
+				this.gatherBuffers[this.gatherCount++] = ByteBuffer.wrap(frame);
+			}
+			if(this.gatherCount == 0)
+			{
+				return true;
+			}
+
+			this.channel.write(this.gatherBuffers, 0, this.gatherCount);
+
+			int written = 0;
+			while(written < this.gatherCount && this.gatherBuffers[written].hasRemaining() == false)
+			{
+				written++;
+			}
+			System.arraycopy(this.gatherBuffers, written, this.gatherBuffers, 0, this.gatherCount - written);
+			for(int i = this.gatherCount - written; i < this.gatherCount; i++)
+			{
+				this.gatherBuffers[i] = null;
+			}
+			this.gatherCount -= written;
+			if(this.gatherCount > 0)
+			{
+				return false;
+			}
+		}
+	}
+
+	// Called by owning event loop after write queue was drained, so
+	// next sendData() schedules new write request:
+
+	public void writeCompleted()
+	{
+		this.lastWriteTime = System.nanoTime();
+		this.writeScheduled.set(false);
+		if(this.writeQueue.isEmpty() == false || this.closeRequested == true)
+		{
+			this.scheduleWrite();
+		}
+	}
+
+	// Event loop is woken up right away if flush policy says so,
+	// otherwise frames queued until delayed write are sent together:
+
+	private void scheduleWrite()
+	{
+		if(this.writeRequests != null && this.writeScheduled.compareAndSet(false, true) == true)
+		{
+			if(this.closeRequested == true || this.flushPolicy.isFlushDue(this.lastWriteTime) == true)
+			{
+				this.requestWrite();
+			}
+			else
+			{
+				this.flushPolicy.scheduleFlush(this.delayedWrite);
+			}
+		}
+	}
+
+	private void requestWrite()
+	{
+		this.writeRequests.add(this);
+		Selector selector = this.selectionKey.selector();
+		selector.wakeup();
+	}
+
+	private void ensureReadCapacity(int frameLength)
+	{
+		if(frameLength > this.readBuffer.capacity())
+		{
+			ByteBuffer largerBuffer = ByteBuffer.allocate(frameLength);
+			largerBuffer.put(this.readBuffer);
+			largerBuffer.flip();
+			this.readBuffer = largerBuffer;
+		}
+	}
+
+	// Inner classes:
+
+	class DelayedWrite implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			requestWrite();
+		}
+	}
+}
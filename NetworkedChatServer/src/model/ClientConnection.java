@@ -0,0 +1,36 @@
+/* File: ClientConnection.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is transport template for connected client.
+ *     Server uses it to send messages to client without knowing
+ *     if client is served by blocking socket or by non-blocking channel.
+ *     Frame is sent together with its message, so outbound queue
+ *     can tell broadcasts and client list updates from other frames.
+ *
+ */
+
+package model;
+
+public interface ClientConnection
+{
+	// Class methods:
+
+	public void sendData(SocketMessage data);
+	public void sendFrame(byte[] frame, SocketMessage data);
+	public OutboundQueue getOutboundQueue();
+	public MessageCodec getMessageCodec();
+	public void setMessageCodec(MessageCodec messageCodec);
+	public boolean isCompressionEnabled();
+	public void setCompressionEnabled(boolean compressionEnabled);
+	public void closeConnection();
+	public boolean isOpen();
+	public String getRemoteAddress();
+}
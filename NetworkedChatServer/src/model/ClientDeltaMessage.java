@@ -0,0 +1,60 @@
+/* File: ClientDeltaMessage.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is concrete class from SocketMessage class, and
+ *    used to tell every client that one client joined or left chat.
+ *    Every change of client list increases roster version by one, so
+ *    client that misses change sees gap in versions and asks server
+ *    for whole list with ClientUpdateMessage.
+ *
+ */
+
+package model;
+
+public class ClientDeltaMessage extends SocketMessage
+{
+	// Properties:
+
+	private int version = 0;
+	private ClientInfoModel joinedClient = null;
+	private int leftClientId = 0;
+
+	// Default constructor:
+
+	public ClientDeltaMessage(int version, ClientInfoModel joinedClient, int leftClientId)
+	{
+		super(null, MessageKind.CLIENT_DELTA);
+		this.version = version;
+		this.joinedClient = joinedClient;
+		this.leftClientId = leftClientId;
+	}
+
+	// Getter methods:
+
+	public int getVersion()
+	{
+		return this.version;
+	}
+
+	// Returns null if client left chat:
+
+	public ClientInfoModel getJoinedClient()
+	{
+		return this.joinedClient;
+	}
+
+	// Returns 0 if client joined chat:
+
+	public int getLeftClientId()
+	{
+		return this.leftClientId;
+	}
+}
@@ -0,0 +1,143 @@
+/* File: ClientIdTable.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class assigns session id to every accepted client and
+ *    finds client by id when message is routed. Id is index of
+ *    table slot shifted left by 12 bits, next 4 bits are id of
+ *    cluster node, so ids of clients of different nodes never
+ *    collide, and low 8 bits count how many times slot was reused,
+ *    so message sent to client that already left is not delivered
+ *    to new client in the same slot. Lookups do not lock, only
+ *    assigning and releasing ids does.
+ *
+ */
+
+package model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ClientIdTable
+{
+	// Properties:
+
+	public static final int MAX_NODES = 16;
+
+	private static final int GENERATION_BITS = 8;
+	private static final int GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+	private static final int SLOT_SHIFT = GENERATION_BITS + 4;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private volatile AtomicReferenceArray<ClientModel> slots = new AtomicReferenceArray<ClientModel>(INITIAL_CAPACITY);
+	private int[] generations = new int[INITIAL_CAPACITY];
+	private int[] freeSlots = new int[INITIAL_CAPACITY];
+	private int freeCount = 0;
+	private int usedSlots = 0;
+	private int nodeBits = 0;
+
+	// Default constructor:
+
+	public ClientIdTable(int nodeId)
+	{
+		this.nodeBits = nodeId << GENERATION_BITS;
+	}
+
+	// Getter methods:
+
+	// Returns null if no client has this id:
+
+	public ClientModel getClient(int clientId)
+	{
+		int slot = clientId >>> SLOT_SHIFT;
+		AtomicReferenceArray<ClientModel> currentSlots = this.slots;
+		if(clientId <= 0 || slot >= currentSlots.length())
+		{
+			return null;
+		}
+		ClientModel client = currentSlots.get(slot);
+		if(client == null || client.getClientInfo().getClientId() != clientId)
+		{
+			return null;
+		}
+		return client;
+	}
+
+	// Class methods:
+
+	// Assign new id to client and store it in client info:
+
+	public synchronized int register(ClientModel client)
+	{
+		int slot = 0;
+		if(this.freeCount > 0)
+		{
+			slot = this.freeSlots[--this.freeCount];
+		}
+		else
+		{
+			slot = this.usedSlots++;
+			if(slot >= this.generations.length)
+			{
+				this.grow();
+			}
+		}
+
+		// Generation is never 0, so id of first slot is never 0 either:
+		int generation = (this.generations[slot] % GENERATION_MASK) + 1;
+		this.generations[slot] = generation;
+
+		int clientId = (slot << SLOT_SHIFT) | this.nodeBits | generation;
+		client.getClientInfo().setClientId(clientId);
+		this.slots.set(slot, client);
+		return clientId;
+	}
+
+	public synchronized void remove(ClientModel client)
+	{
+		int clientId = client.getClientInfo().getClientId();
+		if(this.getClient(clientId) != client)
+		{
+			return;
+		}
+		int slot = clientId >>> SLOT_SHIFT;
+		this.slots.set(slot, null);
+		this.freeSlots[this.freeCount++] = slot;
+	}
+
+	public synchronized void clear()
+	{
+		for(int slot = 0; slot < this.usedSlots; slot++)
+		{
+			if(this.slots.get(slot) != null)
+			{
+				this.slots.set(slot, null);
+				this.freeSlots[this.freeCount++] = slot;
+			}
+		}
+	}
+
+	private void grow()
+	{
+		int capacity = this.generations.length * 2;
+		AtomicReferenceArray<ClientModel> largerSlots = new AtomicReferenceArray<ClientModel>(capacity);
+		for(int slot = 0; slot < this.generations.length; slot++)
+		{
+			largerSlots.set(slot, this.slots.get(slot));
+		}
+		int[] largerGenerations = new int[capacity];
+		System.arraycopy(this.generations, 0, largerGenerations, 0, this.generations.length);
+		int[] largerFreeSlots = new int[capacity];
+		System.arraycopy(this.freeSlots, 0, largerFreeSlots, 0, this.freeCount);
+
+		this.generations = largerGenerations;
+		this.freeSlots = largerFreeSlots;
+		this.slots = largerSlots;
+	}
+}
@@ -9,34 +9,40 @@
  *     12/07/2017
  * 
  * Class description:
- *    This class is client connection. When client establishes
+ *    This class is connected client. When client establishes
  *    connection with server this instance of client is created.
- *    So, server can read and write objects to connected client
- *    using Sockets.
+ *    So, server can read and write messages to connected client
+ *    using blocking socket or non-blocking channel connection.
+ *    Changes of its outbound queue lag are passed to slow consumer
+ *    listener, which is set when client joins chat. Client also
+ *    knows chat rooms it has joined.
  * 
  */
 
 package model;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ClientModel implements ServerObserver
 {
 	// Properties:
 	
 	private ClientInfoModel clientInfo = null;
-	private Socket clientSocket = null;
-	private ObjectInputStream dataIn = null;
-	private ObjectOutputStream dataOut = null;
+	private ClientConnection connection = null;
+	private final AtomicBoolean handshakeStarted = new AtomicBoolean(false);
+	private volatile SlowConsumerListener slowConsumerListener = null;
+	private volatile String disconnectReason = null;
+	private final Set<String> rooms = ConcurrentHashMap.newKeySet();
 	
 	// Default constructor:
 	
-	public ClientModel()
+	public ClientModel(ClientConnection connection)
 	{
-
+		this.connection = connection;
+		this.connection.getOutboundQueue().setLagListener(new QueueLagListener());
 	}
 	
 	// Getter methods:
@@ -46,120 +52,192 @@ public class ClientModel implements ServerObserver
 		return this.clientInfo;
 	}
 	
-	public ObjectInputStream getInputStream()
+	public ClientConnection getConnection()
 	{
-		return this.dataIn;
+		return this.connection;
 	}
 	
-	public ObjectOutputStream getOutputStream()
+	public boolean isConnected()
 	{
-		return this.dataOut;
+		return this.connection.isOpen();
 	}
 	
-	public Socket getClientSocket() 
+	// Blocking connections need own reader thread, channel
+	// connections are read by selector event loop:
+	
+	public boolean isBlocking()
 	{
-		return this.clientSocket;
+		return this.connection instanceof SocketConnection;
 	}
 	
-	// Setter methods:
+	// Client that does not read its frames fast enough:
 	
-	public void setUserInfo(ClientInfoModel clientInfo)
+	public boolean isLagging()
 	{
-		this.clientInfo = clientInfo;
+		return this.connection.getOutboundQueue().isLagging();
 	}
 	
-	public void setClientSocket(Socket socket)
+	public String getLagReport()
 	{
-		this.clientSocket = socket;
+		return this.connection.getOutboundQueue().getLagReport();
 	}
 	
+	// Returns null unless server closed connection because
+	// client was too slow:
 	
-	private boolean setDataIn() 
+	public String getDisconnectReason()
 	{
-		try 
-		{
-			this.dataIn = new ObjectInputStream(this.clientSocket.getInputStream());
-			return true;
-		} 
-		catch (IOException e) 
-		{
-			System.err.println("Client " + this.clientInfo.getName() + " : Cannot instantiate ObjectInputStream > " + e.getMessage());
-			return false;
-		} 
+		return this.disconnectReason;
 	}
 	
-	private boolean setDataOut() 
+	// Names of chat rooms client has joined, kept by room index:
+	
+	public Set<String> getRooms()
 	{
-		try 
+		return this.rooms;
+	}
+	
+	public String getDisplayName()
+	{
+		if(this.clientInfo != null)
 		{
-			this.dataOut = new ObjectOutputStream(this.clientSocket.getOutputStream());
-			return true;
+			return this.clientInfo.getName();
 		}
-		catch (IOException e) 
-		{
-			System.err.println("Client " + this.clientInfo.getName() + " : Cannot instantiate ObjectOutputStream > " + e.getMessage());
-			return false;
-		} 
+		return this.connection.getRemoteAddress();
+	}
+	
+	// Setter methods:
+	
+	public void setUserInfo(ClientInfoModel clientInfo)
+	{
+		this.clientInfo = clientInfo;
+	}
+	
+	// Format of all frames sent to client after handshake:
+	
+	public void setMessageCodec(MessageCodec messageCodec)
+	{
+		this.connection.setMessageCodec(messageCodec);
+	}
+	
+	public void setCompressionEnabled(boolean compressionEnabled)
+	{
+		this.connection.setCompressionEnabled(compressionEnabled);
+	}
+	
+	public void setSlowConsumerListener(SlowConsumerListener slowConsumerListener)
+	{
+		this.slowConsumerListener = slowConsumerListener;
 	}
 	
 	// Class methods:
 	
-	public void setConnection() 
+	// Returns true only for first call, so handshake of one client
+	// is never processed twice:
+	
+	public boolean startHandshake()
 	{
-		this.setDataOut();
-		this.setDataIn();
+		return this.handshakeStarted.compareAndSet(false, true);
 	}
 	
-	public SocketMessage getData() 
+	public SocketMessage getData() throws IOException
 	{
-		SocketMessage data = null;
-		try 
+		return ((SocketConnection)this.connection).getData();
+	}
+	
+	public void sendData(SocketMessage data) 
+	{
+		this.connection.sendData(data);
+	}
+	
+	// Relayed frame is written as it is when client uses binary
+	// format, otherwise message has to be decoded and encoded again:
+	
+	public void relayMessage(RelayMessage data)
+	{
+		if(this.connection.getMessageCodec().getFormat() == SocketMessageCodec.FORMAT_BINARY)
+		{
+			this.connection.sendFrame(data.getFrame(), data);
+			return;
+		}
+		try
 		{
-			data = (SocketMessage)dataIn.readObject();
-		} 
-		catch (IOException | ClassNotFoundException e)
+			this.connection.sendData(data.decodeMessage());
+		}
+		catch (IOException e)
 		{
-			
+			System.err.println("Client " + this.getDisplayName() + ": Cannot decode relayed message > " + e.getMessage());
 		}
-		return data;
 	}
 	
-	public void sendData(SocketMessage data) 
+	// Forward direct message received from other client:
+	
+	public void forwardMessage(SocketMessage data)
 	{
-		try 
+		if(data instanceof RelayMessage)
+		{
+			this.relayMessage((RelayMessage)data);
+		}
+		else
 		{
-			this.dataOut.writeObject(data);
-			this.dataOut.flush();
-			this.dataOut.reset();
-		} catch (IOException e) {
-			
+			this.sendData(data);
 		}
 	}
 	
 	public void closeSocket() 
 	{
-		try 
+		this.connection.closeConnection();
+	}
+
+	// Send message that was prepared for many clients, so it is
+	// encoded only once for all of them:
+	
+	public void sendFrame(Frame frame)
+	{
+		try
 		{
-			if(this.clientSocket != null) 
-			{
-				this.clientSocket.close();
-				this.clientSocket = null;
-			}
-			
-		} 
-		catch (IOException e) 
+			this.connection.sendFrame(frame.getEncoded(this.connection.getMessageCodec(), this.connection.isCompressionEnabled()), frame.getMessage());
+		}
+		catch (IOException e)
 		{
-			System.err.println("Client " + this.clientInfo.getName() + ": Cannot close socket > " + e.getMessage());
+			System.err.println("Client " + this.getDisplayName() + ": Cannot encode message > " + e.getMessage());
 		}
 	}
 
 	@Override
-	public void updateObserver(SocketMessage data) 
+	public void updateObserver(Frame frame) 
 	{
-		this.sendData(data);
+		this.sendFrame(frame);
 	}
 	
 	// Inner Classes:
 
-	
+	class QueueLagListener implements OutboundQueue.LagListener
+	{
+		@Override
+		public void queueLagging()
+		{
+			SlowConsumerListener listener = slowConsumerListener;
+			if(listener != null)
+			{
+				listener.clientLagging(ClientModel.this);
+			}
+		}
+		
+		@Override
+		public void queueCaughtUp()
+		{
+			SlowConsumerListener listener = slowConsumerListener;
+			if(listener != null)
+			{
+				listener.clientCaughtUp(ClientModel.this);
+			}
+		}
+		
+		@Override
+		public void queueOverflow(String reason)
+		{
+			disconnectReason = reason;
+		}
+	}
 }
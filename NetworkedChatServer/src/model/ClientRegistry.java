@@ -0,0 +1,140 @@
+/* File: ClientRegistry.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class keeps all clients accepted by server. Names are
+ *    reserved atomically in concurrent map, so two clients cannot
+ *    take the same name, and clients are found by session id in
+ *    id table. Clients that receive broadcasts are kept in
+ *    copy-on-write array, so sending to all clients reads current
+ *    array without locking and without copying it, and can split
+ *    it between several threads by index.
+ *
+ */
+
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ClientRegistry
+{
+	// Properties:
+
+	private final ConcurrentHashMap<String, ClientModel> clientsByName = new ConcurrentHashMap<String, ClientModel>();
+	private volatile ClientModel[] clients = new ClientModel[0];
+	private ClientIdTable clientIds = null;
+
+	// Default constructor:
+
+	// Node id is part of every session id assigned by this server:
+
+	public ClientRegistry(int nodeId)
+	{
+		this.clientIds = new ClientIdTable(nodeId);
+	}
+
+	// Getter methods:
+
+	// Returns null if no client has this name:
+
+	public ClientModel getClient(String name)
+	{
+		return this.clientsByName.get(name);
+	}
+
+	// Returns null if no client has this session id:
+
+	public ClientModel getClient(int clientId)
+	{
+		return this.clientIds.getClient(clientId);
+	}
+
+	// Clients that receive broadcasts. Returned array is never
+	// changed, joins and leaves replace it with new one:
+
+	public ClientModel[] getClients()
+	{
+		return this.clients;
+	}
+
+	// Class methods:
+
+	// Reserve name for client that is being accepted. Returns false
+	// if name is already taken:
+
+	public boolean reserveName(String name, ClientModel client)
+	{
+		if(name == null)
+		{
+			return false;
+		}
+		return this.clientsByName.putIfAbsent(name, client) == null;
+	}
+
+	// Release name that was reserved, but cannot be used:
+
+	public void releaseName(String name, ClientModel client)
+	{
+		this.clientsByName.remove(name, client);
+	}
+
+	public int assignClientId(ClientModel client)
+	{
+		return this.clientIds.register(client);
+	}
+
+	// Start sending broadcasts to client whose name is reserved:
+
+	public synchronized void add(ClientModel client)
+	{
+		ClientModel[] current = this.clients;
+		ClientModel[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = client;
+		this.clients = updated;
+	}
+
+	// Release name and id of client. Returns false if client was
+	// already removed:
+
+	public boolean remove(ClientModel client)
+	{
+		if(this.clientsByName.remove(client.getClientInfo().getName(), client) == false)
+		{
+			return false;
+		}
+		this.removeClient(client);
+		this.clientIds.remove(client);
+		return true;
+	}
+
+	public synchronized void clear()
+	{
+		this.clientsByName.clear();
+		this.clients = new ClientModel[0];
+		this.clientIds.clear();
+	}
+
+	private synchronized void removeClient(ClientModel client)
+	{
+		ClientModel[] current = this.clients;
+		for(int i = 0; i < current.length; i++)
+		{
+			if(current[i] == client)
+			{
+				ClientModel[] updated = new ClientModel[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				this.clients = updated;
+				return;
+			}
+		}
+	}
+}
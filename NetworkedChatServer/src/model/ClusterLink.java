@@ -0,0 +1,177 @@
+/* File: ClusterLink.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is persistent TCP link to other cluster node. Records
+ *    are queued by any thread and written by one writer, which flushes
+ *    socket only when queue is empty. Queue is bounded, so node that
+ *    stops reading does not make this node run out of memory: link
+ *    that overflows is closed, and nodes exchange their clients
+ *    again when link is opened next time.
+ *
+ */
+
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class ClusterLink
+{
+	// Properties:
+
+	private static final byte[] CLOSED = new byte[0];
+
+	private Socket socket = null;
+	private DataInputStream dataIn = null;
+	private DataOutputStream dataOut = null;
+	private LinkedBlockingQueue<byte[]> writeQueue = null;
+	private volatile boolean open = true;
+	private volatile int nodeId = -1;
+
+	// Default constructor:
+
+	public ClusterLink(Socket socket, int queueSize) throws IOException
+	{
+		this.socket = socket;
+		this.socket.setTcpNoDelay(true);
+		this.dataIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		this.dataOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		this.writeQueue = new LinkedBlockingQueue<byte[]>(queueSize);
+	}
+
+	// Getter methods:
+
+	// Returns -1 until other node said who it is:
+
+	public int getNodeId()
+	{
+		return this.nodeId;
+	}
+
+	public boolean isOpen()
+	{
+		return this.open;
+	}
+
+	public String getRemoteAddress()
+	{
+		return String.valueOf(this.socket.getRemoteSocketAddress());
+	}
+
+	// Setter methods:
+
+	public void setNodeId(int nodeId)
+	{
+		this.nodeId = nodeId;
+	}
+
+	// Class methods:
+
+	// Returns false if link is closed or its queue is full:
+
+	public boolean send(ClusterRecord record)
+	{
+		if(this.open == false)
+		{
+			return false;
+		}
+		try
+		{
+			if(this.queue(record.toBytes()) == false)
+			{
+				this.closeFull();
+				return false;
+			}
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Cluster: Cannot encode record > " + e.getMessage());
+			return false;
+		}
+	}
+
+	// Queue encoded record without touching socket, so it can be
+	// called under lock. Link that is full is not closed here, caller
+	// closes it with closeFull. Returns false if link is closed or full:
+
+	public boolean queue(byte[] record)
+	{
+		return this.open == true && this.writeQueue.offer(record) == true;
+	}
+
+	public void closeFull()
+	{
+		if(this.open == true)
+		{
+			System.err.println("Cluster: Link to " + this.getRemoteAddress() + " is full, closing it");
+			this.close();
+		}
+	}
+
+	// Blocks until next record arrives:
+
+	public ClusterRecord receive() throws IOException
+	{
+		return ClusterRecord.read(this.dataIn);
+	}
+
+	// Run by writer thread of link until link is closed:
+
+	public void writeRecords()
+	{
+		try
+		{
+			while(this.open == true)
+			{
+				byte[] record = this.writeQueue.take();
+				if(record == CLOSED)
+				{
+					break;
+				}
+				this.dataOut.write(record);
+				if(this.writeQueue.isEmpty() == true)
+				{
+					this.dataOut.flush();
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			this.close();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			this.close();
+		}
+	}
+
+	public void close()
+	{
+		this.open = false;
+		this.writeQueue.clear();
+		this.writeQueue.offer(CLOSED);
+		try
+		{
+			this.socket.close();
+		}
+		catch (IOException e)
+		{
+
+		}
+	}
+}
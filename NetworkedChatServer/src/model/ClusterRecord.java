@@ -0,0 +1,138 @@
+/* File: ClusterRecord.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is one record sent over link between two cluster
+ *    nodes. Record is 4 byte length, operation, one number, one
+ *    string and optional chat message frame. Chat messages are kept
+ *    in binary frame format, so client message received by one node
+ *    is passed to other node and to recipient without encoding it
+ *    again.
+ *
+ */
+
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class ClusterRecord
+{
+	// Properties:
+
+	// First record of every link, number is id of node:
+	public static final int HELLO = 1;
+
+	// Client joined chat on sending node, frame is client delta:
+	public static final int CLIENT_JOINED = 2;
+
+	// Client left sending node, number is its id and string its name:
+	public static final int CLIENT_LEFT = 3;
+
+	// Ask owner node of name to reserve it, number is request id:
+	public static final int RESERVE_NAME = 4;
+	public static final int NAME_ACCEPTED = 5;
+	public static final int NAME_REJECTED = 6;
+
+	// Client message for client of receiving node, number is
+	// recipient id:
+	public static final int CLIENT_MESSAGE = 7;
+
+	// Broadcast message for clients of receiving node:
+	public static final int BROADCAST = 8;
+
+	private static final byte[] NO_FRAME = new byte[0];
+
+	private int operation = 0;
+	private int number = 0;
+	private String text = null;
+	private byte[] frame = null;
+
+	// Default constructor:
+
+	public ClusterRecord(int operation, int number, String text, byte[] frame)
+	{
+		this.operation = operation;
+		this.number = number;
+		this.text = text == null ? "" : text;
+		this.frame = frame == null ? NO_FRAME : frame;
+	}
+
+	// Getter methods:
+
+	public int getOperation()
+	{
+		return this.operation;
+	}
+
+	public int getNumber()
+	{
+		return this.number;
+	}
+
+	public String getText()
+	{
+		return this.text;
+	}
+
+	// Complete frame (header and payload) of chat message:
+
+	public byte[] getFrame()
+	{
+		return this.frame;
+	}
+
+	// Decode chat message of record:
+
+	public SocketMessage getMessage() throws IOException
+	{
+		if(this.frame.length <= SocketMessageCodec.HEADER_LENGTH)
+		{
+			throw new IOException("Cluster record has no message");
+		}
+		return SocketMessageCodec.decode(this.frame, SocketMessageCodec.HEADER_LENGTH, this.frame.length - SocketMessageCodec.HEADER_LENGTH);
+	}
+
+	// Class methods:
+
+	public byte[] toBytes() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.frame.length + this.text.length() + 16);
+		DataOutputStream dataOut = new DataOutputStream(bytes);
+		dataOut.writeInt(0);
+		dataOut.writeByte(this.operation);
+		dataOut.writeInt(this.number);
+		dataOut.writeUTF(this.text);
+		dataOut.write(this.frame);
+		byte[] record = bytes.toByteArray();
+		int length = record.length - 4;
+		record[0] = (byte)(length >>> 24);
+		record[1] = (byte)(length >>> 16);
+		record[2] = (byte)(length >>> 8);
+		record[3] = (byte)length;
+		return record;
+	}
+
+	public static ClusterRecord read(DataInputStream dataIn) throws IOException
+	{
+		byte[] record = new byte[SocketMessageCodec.checkFrameLength(dataIn.readInt())];
+		dataIn.readFully(record);
+		DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+		int operation = recordIn.readUnsignedByte();
+		int number = recordIn.readInt();
+		String text = recordIn.readUTF();
+		byte[] frame = new byte[recordIn.available()];
+		recordIn.readFully(frame);
+		return new ClusterRecord(operation, number, text, frame);
+	}
+}
@@ -0,0 +1,141 @@
+/* File: ClusterRoutingTable.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is replica of cluster routing table kept by every
+ *    node. It tells which node hosts each client that joined chat on
+ *    other node, so message for that client is passed to right node
+ *    without asking anybody. Node announces its clients when they
+ *    join and leave, and when link to node is lost all its clients
+ *    are removed at once. Entries are kept in concurrent maps, so
+ *    routing does not lock.
+ *
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ClusterRoutingTable
+{
+	// Properties:
+
+	private final ConcurrentHashMap<Integer, Route> routesById = new ConcurrentHashMap<Integer, Route>();
+	private final ConcurrentHashMap<String, Route> routesByName = new ConcurrentHashMap<String, Route>();
+
+	// Default constructor:
+
+	public ClusterRoutingTable()
+	{
+
+	}
+
+	// Getter methods:
+
+	// Returns -1 if client is not hosted by other node:
+
+	public int getNodeId(int clientId)
+	{
+		Route route = this.routesById.get(clientId);
+		return route == null ? -1 : route.getNodeId();
+	}
+
+	public boolean hasName(String name)
+	{
+		return this.routesByName.containsKey(name);
+	}
+
+	public int getSize()
+	{
+		return this.routesById.size();
+	}
+
+	// Class methods:
+
+	// Returns null if client is already known:
+
+	public synchronized Route add(ClientInfoModel clientInfo, int nodeId)
+	{
+		if(this.routesById.containsKey(clientInfo.getClientId()) == true || this.routesByName.containsKey(clientInfo.getName()) == true)
+		{
+			return null;
+		}
+		Route route = new Route(clientInfo, nodeId);
+		this.routesById.put(clientInfo.getClientId(), route);
+		this.routesByName.put(clientInfo.getName(), route);
+		return route;
+	}
+
+	// Returns null if node does not host this client:
+
+	public synchronized Route remove(int clientId, int nodeId)
+	{
+		Route route = this.routesById.get(clientId);
+		if(route == null || route.getNodeId() != nodeId)
+		{
+			return null;
+		}
+		this.routesById.remove(clientId);
+		this.routesByName.remove(route.getClientInfo().getName(), route);
+		return route;
+	}
+
+	// Remove all clients of node which link was lost:
+
+	public synchronized List<Route> removeNode(int nodeId)
+	{
+		List<Route> removed = new ArrayList<Route>();
+		for(Route route : this.routesById.values())
+		{
+			if(route.getNodeId() == nodeId)
+			{
+				removed.add(route);
+			}
+		}
+		for(Route route : removed)
+		{
+			this.routesById.remove(route.getClientInfo().getClientId());
+			this.routesByName.remove(route.getClientInfo().getName(), route);
+		}
+		return removed;
+	}
+
+	public synchronized void clear()
+	{
+		this.routesById.clear();
+		this.routesByName.clear();
+	}
+
+	// Inner classes:
+
+	public static class Route
+	{
+		private ClientInfoModel clientInfo = null;
+		private int nodeId = 0;
+
+		public Route(ClientInfoModel clientInfo, int nodeId)
+		{
+			this.clientInfo = clientInfo;
+			this.nodeId = nodeId;
+		}
+
+		public ClientInfoModel getClientInfo()
+		{
+			return this.clientInfo;
+		}
+
+		public int getNodeId()
+		{
+			return this.nodeId;
+		}
+	}
+}
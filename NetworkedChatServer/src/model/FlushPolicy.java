@@ -0,0 +1,98 @@
+/* File: FlushPolicy.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class decides when frames written to client connection
+ *    are flushed to socket. Frames written within flush delay are
+ *    coalesced into one socket write, which trades a little latency
+ *    for fewer system calls and TCP packets. Delayed flushes of all
+ *    connections are run by one timer thread.
+ *
+ */
+
+package model;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class FlushPolicy
+{
+	// Properties:
+
+	private Mode mode = Mode.ADAPTIVE;
+	private long delayNanos = 0;
+	private ScheduledThreadPoolExecutor flushTimer = null;
+
+	// Default constructor:
+
+	public FlushPolicy(Mode mode, int delayMillis)
+	{
+		this.mode = mode;
+		this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		if(mode != Mode.LATENCY && delayMillis > 0)
+		{
+			this.flushTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable task)
+				{
+					Thread thread = new Thread(task, "FlushTimer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	// Getter methods:
+
+	public Mode getMode()
+	{
+		return this.mode;
+	}
+
+	// Returns true if frame just written has to be flushed right away.
+	// Adaptive mode flushes right away when connection was idle for
+	// whole flush delay, so single messages are not delayed and only
+	// bursts are coalesced:
+
+	public boolean isFlushDue(long lastFlushTime)
+	{
+		if(this.flushTimer == null)
+		{
+			return true;
+		}
+		if(this.mode == Mode.ADAPTIVE)
+		{
+			return System.nanoTime() - lastFlushTime >= this.delayNanos;
+		}
+		return false;
+	}
+
+	// Class methods:
+
+	public void scheduleFlush(Runnable flushTask)
+	{
+		this.flushTimer.schedule(flushTask, this.delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	// Inner classes:
+
+	public enum Mode
+	{
+		// Flush after every frame:
+		LATENCY,
+		// Flush right away after idle period, otherwise coalesce:
+		ADAPTIVE,
+		// Always coalesce frames written within flush delay:
+		THROUGHPUT
+	}
+}
@@ -0,0 +1,70 @@
+/* File: Frame.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is message prepared for sending to many clients.
+ *    Message is encoded at most once for every message format, and
+ *    the same encoded frame is written to every connection that uses
+ *    this format and compression setting. Encoded frames are never
+ *    changed after they are created, so connections share them
+ *    without copying. Cached frames are read without locking, two
+ *    threads that encode the same format at the same time just keep
+ *    whichever frame was stored first. Frames are not pooled, so
+ *    they have no release: cached arrays are immutable and are left to
+ *    garbage collector once this object and every write queue that
+ *    holds them are gone.
+ *
+ */
+
+package model;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class Frame
+{
+	// Properties:
+
+	private SocketMessage message = null;
+	private final AtomicReferenceArray<byte[]> encodedFrames = new AtomicReferenceArray<byte[]>(SocketMessageCodec.FORMAT_COUNT * 2);
+
+	// Default constructor:
+
+	public Frame(SocketMessage message)
+	{
+		this.message = message;
+	}
+
+	// Getter methods:
+
+	public SocketMessage getMessage()
+	{
+		return this.message;
+	}
+
+	// Returns complete frame (header and payload) encoded with given
+	// codec, message is encoded only on first call for each format
+	// and compression setting:
+
+	public byte[] getEncoded(MessageCodec codec, boolean compress) throws IOException
+	{
+		int index = codec.getFormat() * 2 + (compress == true ? 1 : 0);
+		byte[] encodedFrame = this.encodedFrames.get(index);
+		if(encodedFrame == null)
+		{
+			encodedFrame = SocketMessageCodec.encode(this.message, codec, compress);
+			if(this.encodedFrames.compareAndSet(index, null, encodedFrame) == false)
+			{
+				encodedFrame = this.encodedFrames.get(index);
+			}
+		}
+		return encodedFrame;
+	}
+}
@@ -0,0 +1,194 @@
+/* File: FrameCompressor.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class compresses frame payloads for connections that agreed
+ *    on compression during handshake. Every frame is compressed on its
+ *    own with preset dictionary of common chat text, so compressed
+ *    broadcast frame can be shared by all recipients. Compressed payload
+ *    is 4 byte uncompressed length followed by deflate data. Deflaters
+ *    and inflaters are kept in pools, because creating them is costly.
+ *
+ */
+
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public final class FrameCompressor
+{
+	// Properties:
+
+	// Set in format byte of compressed frame:
+	public static final int COMPRESSED_FLAG = 0x80;
+
+	// Smaller payloads are not worth compressing:
+	public static final int COMPRESSION_THRESHOLD = 256;
+
+	private static final int MAX_POOLED = 16;
+
+	// Both sides have to use the same dictionary:
+	private static final byte[] DICTIONARY = ("java.util.ArrayList java.math.BigInteger java.lang.Number "
+			+ "model.SocketMessage model.ClientInfoModel model.PublicRSAKey model.ClientUpdateMessage model.ClientDeltaMessage "
+			+ "model.BroadcastMessage model.HandshakeMessage model.ClientMessage model.MessageKind "
+			+ "messageTag timeMillis sender senderId recipientId clientId publicKey clientList version joinedClient leftClientId unencryptedMessage "
+			+ "You have been disconnected from server due to server shut down. "
+			+ "User: has joined to chat. User \" \" has left the chat. Server "
+			+ "the and you to is that it of for in on with this have be are what").getBytes(StandardCharsets.UTF_8);
+
+	private static final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+	private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+
+	// Default constructor:
+
+	private FrameCompressor()
+	{
+
+	}
+
+	// Class methods:
+
+	public static boolean isCompressed(int formatByte)
+	{
+		return (formatByte & COMPRESSED_FLAG) != 0;
+	}
+
+	// Message format of format byte without compression flag:
+
+	public static int getMessageFormat(int formatByte)
+	{
+		return formatByte & 0xFF & ~COMPRESSED_FLAG;
+	}
+
+	// Returns compressed payload, or null if it is not smaller
+	// than original one:
+
+	public static byte[] compress(byte[] payload, int offset, int length)
+	{
+		Deflater deflater = deflaters.poll();
+		if(deflater == null)
+		{
+			deflater = new Deflater(Deflater.BEST_SPEED);
+		}
+		try
+		{
+			deflater.setDictionary(DICTIONARY);
+			deflater.setInput(payload, offset, length);
+			deflater.finish();
+
+			byte[] compressed = new byte[length];
+			compressed[0] = (byte)(length >>> 24);
+			compressed[1] = (byte)(length >>> 16);
+			compressed[2] = (byte)(length >>> 8);
+			compressed[3] = (byte)length;
+			int compressedLength = 4;
+			while(deflater.finished() == false)
+			{
+				if(compressedLength == compressed.length)
+				{
+					return null;
+				}
+				compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+			}
+
+			byte[] result = new byte[compressedLength];
+			System.arraycopy(compressed, 0, result, 0, compressedLength);
+			return result;
+		}
+		finally
+		{
+			release(deflater);
+		}
+	}
+
+	public static byte[] decompress(byte[] compressed, int offset, int length) throws IOException
+	{
+		if(length < 4)
+		{
+			throw new IOException("Truncated compressed frame");
+		}
+		int payloadLength = ((compressed[offset] & 0xFF) << 24) | ((compressed[offset + 1] & 0xFF) << 16)
+				| ((compressed[offset + 2] & 0xFF) << 8) | (compressed[offset + 3] & 0xFF);
+		if(payloadLength <= 0 || payloadLength > SocketMessageCodec.MAX_FRAME_LENGTH)
+		{
+			throw new IOException("Invalid compressed frame length " + payloadLength);
+		}
+
+		Inflater inflater = inflaters.poll();
+		if(inflater == null)
+		{
+			inflater = new Inflater();
+		}
+		try
+		{
+			inflater.setInput(compressed, offset + 4, length - 4);
+			byte[] payload = new byte[payloadLength];
+			int payloadPosition = 0;
+			while(payloadPosition < payloadLength)
+			{
+				int inflated = inflater.inflate(payload, payloadPosition, payloadLength - payloadPosition);
+				if(inflated == 0)
+				{
+					if(inflater.needsDictionary() == false)
+					{
+						throw new IOException("Truncated compressed frame");
+					}
+					inflater.setDictionary(DICTIONARY);
+				}
+				payloadPosition += inflated;
+			}
+			if(inflater.finished() == false && inflater.inflate(new byte[1]) > 0)
+			{
+				throw new IOException("Compressed frame is longer than its length");
+			}
+			return payload;
+		}
+		catch (DataFormatException | IllegalArgumentException e)
+		{
+			throw new IOException("Invalid compressed frame > " + e.getMessage());
+		}
+		finally
+		{
+			release(inflater);
+		}
+	}
+
+	private static void release(Deflater deflater)
+	{
+		deflater.reset();
+		if(deflaters.size() < MAX_POOLED)
+		{
+			deflaters.add(deflater);
+		}
+		else
+		{
+			deflater.end();
+		}
+	}
+
+	private static void release(Inflater inflater)
+	{
+		inflater.reset();
+		if(inflaters.size() < MAX_POOLED)
+		{
+			inflaters.add(inflater);
+		}
+		else
+		{
+			inflater.end();
+		}
+	}
+}
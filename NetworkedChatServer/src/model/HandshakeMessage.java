@@ -22,11 +22,19 @@ public class HandshakeMessage extends SocketMessage
 	
     private boolean validName = false;
 
+    // Message format client asks for, and in server reply format
+    // both sides use after handshake:
+    private int wireFormat = SocketMessageCodec.FORMAT_BINARY;
+
+    // Client asks for compression of large frames, and server reply
+    // tells if both sides use it:
+    private boolean compression = true;
+
     // Default constructor:
     
     public HandshakeMessage(ClientInfoModel sender)
     {
-        super(sender, "HandshakeMessage");
+        super(sender, MessageKind.HANDSHAKE);
     }
 
     // Getter methods:
@@ -36,6 +44,16 @@ public class HandshakeMessage extends SocketMessage
     		return this.validName; 
     	}
 
+    public int getWireFormat()
+    {
+        return this.wireFormat;
+    }
+
+    public boolean isCompression()
+    {
+        return this.compression;
+    }
+
     // Setter methods:
     
     public void setValidName(boolean value)
@@ -43,6 +61,16 @@ public class HandshakeMessage extends SocketMessage
     		this.validName = value;
     	}
 
+    public void setWireFormat(int wireFormat)
+    {
+        this.wireFormat = wireFormat;
+    }
+
+    public void setCompression(boolean compression)
+    {
+        this.compression = compression;
+    }
+
 	// Class methods:
     
     // Inner classes:
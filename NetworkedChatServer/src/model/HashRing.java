@@ -0,0 +1,97 @@
+/* File: HashRing.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is consistent hash ring of cluster nodes. Every node
+ *    is placed on ring at several points, and key belongs to first
+ *    node point after hash of key. When node joins or leaves cluster
+ *    only keys next to its points move to other node, and all nodes
+ *    that see the same members pick the same node for every key.
+ *    Ring is immutable, so it is replaced when members change and
+ *    read without locking.
+ *
+ */
+
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class HashRing
+{
+	// Properties:
+
+	private static final int POINTS_PER_NODE = 64;
+
+	// Sorted hashes of points and node that owns each of them:
+	private long[] points = null;
+	private int[] nodes = null;
+
+	// Default constructor:
+
+	public HashRing(int[] nodeIds)
+	{
+		this.points = new long[nodeIds.length * POINTS_PER_NODE];
+		this.nodes = new int[this.points.length];
+		int count = 0;
+		for(int nodeId : nodeIds)
+		{
+			for(int point = 0; point < POINTS_PER_NODE; point++)
+			{
+				// Point hash keeps node id in low bits, so the same
+				// hash of two points is sorted the same way everywhere:
+				this.points[count++] = (hash("node-" + nodeId + "-" + point) << 8) | nodeId;
+			}
+		}
+		Arrays.sort(this.points);
+		for(int i = 0; i < this.points.length; i++)
+		{
+			this.nodes[i] = (int)(this.points[i] & 0xFF);
+		}
+	}
+
+	// Getter methods:
+
+	// Returns -1 if ring has no nodes:
+
+	public int getNode(String key)
+	{
+		if(this.points.length == 0)
+		{
+			return -1;
+		}
+		long keyPoint = (hash(key) << 8) | 0xFF;
+		int index = Arrays.binarySearch(this.points, keyPoint);
+		if(index < 0)
+		{
+			index = -index - 1;
+		}
+		return this.nodes[index % this.nodes.length];
+	}
+
+	// Class methods:
+
+	// 32 bit FNV-1a hash of UTF-8 bytes, mixed so similar keys land
+	// far from each other:
+
+	private static long hash(String key)
+	{
+		int hash = 0x811C9DC5;
+		for(byte value : key.getBytes(StandardCharsets.UTF_8))
+		{
+			hash ^= value & 0xFF;
+			hash *= 0x01000193;
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		return hash & 0xFFFFFFFFL;
+	}
+}
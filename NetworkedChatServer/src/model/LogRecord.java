@@ -0,0 +1,67 @@
+/* File: LogRecord.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is one formatted server log line. Records are
+ *    created by log consumer thread and passed to log sinks.
+ *
+ */
+
+package model;
+
+public class LogRecord
+{
+	// Properties:
+
+	private long timeMillis = 0;
+	private String timeStamp = null;
+	private String message = null;
+	private boolean important = false;
+
+	// Default constructor:
+
+	public LogRecord(long timeMillis, String timeStamp, String message, boolean important)
+	{
+		this.timeMillis = timeMillis;
+		this.timeStamp = timeStamp;
+		this.message = message;
+		this.important = important;
+	}
+
+	// Getter methods:
+
+	public long getTimeMillis()
+	{
+		return this.timeMillis;
+	}
+
+	public String getTimeStamp()
+	{
+		return this.timeStamp;
+	}
+
+	public String getMessage()
+	{
+		return this.message;
+	}
+
+	public boolean isImportant()
+	{
+		return this.important;
+	}
+
+	// Class methods:
+
+	@Override
+	public String toString()
+	{
+		return this.timeStamp + (this.important == true ? " ! " : " > ") + this.message;
+	}
+}
@@ -0,0 +1,27 @@
+/* File: LogSink.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is destination for formatted server log records.
+ *     Records are always delivered in batches from single log consumer
+ *     thread, so implementations do not need own locking.
+ *
+ */
+
+package model;
+
+import java.util.List;
+
+public interface LogSink
+{
+	// Class methods:
+
+	public void writeLog(List<LogRecord> records);
+}
@@ -0,0 +1,35 @@
+/* File: MessageCodec.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is template for frame payload formats. Every
+ *     format has its own format byte, which is written in front of
+ *     payload, so receiver can decode frame without knowing in advance
+ *     which format sender has chosen.
+ *
+ */
+
+package model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface MessageCodec
+{
+	// Getter methods:
+
+	public int getFormat();
+	public String getName();
+
+	// Class methods:
+
+	public void encode(SocketMessage data, OutputStream out) throws IOException;
+	public SocketMessage decode(byte[] payload, int offset, int length) throws IOException;
+}
@@ -0,0 +1,84 @@
+/* File: MessageKind.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This enum lists every kind of socket message. Every kind has
+ *     small number tag that is sent with message instead of its
+ *     type name, and message handlers are kept in arrays indexed by
+ *     this tag, so message is dispatched without comparing strings.
+ *
+ */
+
+package model;
+
+public enum MessageKind
+{
+	HANDSHAKE(1),
+	CLIENT_MESSAGE(2),
+	BROADCAST(3),
+	CLIENT_UPDATE(4),
+	CLIENT_DELTA(5),
+	ROOM(6);
+
+	// Properties:
+
+	private static final MessageKind[] kindsByTag = createTagTable();
+
+	private final int tag;
+
+	// Default constructor:
+
+	private MessageKind(int tag)
+	{
+		this.tag = tag;
+	}
+
+	// Getter methods:
+
+	public int getTag()
+	{
+		return this.tag;
+	}
+
+	// Size of arrays indexed by message tag:
+
+	public static int getTagCount()
+	{
+		return kindsByTag.length;
+	}
+
+	// Returns null for unknown tag:
+
+	public static MessageKind fromTag(int tag)
+	{
+		if(tag < 0 || tag >= kindsByTag.length)
+		{
+			return null;
+		}
+		return kindsByTag[tag];
+	}
+
+	// Class methods:
+
+	private static MessageKind[] createTagTable()
+	{
+		int tagCount = 0;
+		for(MessageKind kind : values())
+		{
+			tagCount = Math.max(tagCount, kind.tag + 1);
+		}
+		MessageKind[] kinds = new MessageKind[tagCount];
+		for(MessageKind kind : values())
+		{
+			kinds[kind.tag] = kind;
+		}
+		return kinds;
+	}
+}
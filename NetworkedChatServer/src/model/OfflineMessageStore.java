@@ -0,0 +1,739 @@
+/* File: OfflineMessageStore.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class keeps client messages for recipients that are not
+ *    connected, until they join chat again with the same name and
+ *    the same public key. Message encrypted with other key cannot be
+ *    read, so it is dropped instead. Messages are only stored for
+ *    name and key of client that left this server, and store does not
+ *    grow over its size limit.
+ *    Messages are appended to memory-mapped segment files, so storing
+ *    one is only a copy to mapped memory, and are indexed in memory by
+ *    recipient name. Record is only marked when it is delivered or
+ *    expires. Background task expires old records, deletes segments
+ *    without live records, and moves live records of mostly empty
+ *    segments to current segment before deleting them. Index is
+ *    rebuilt from segment files when server starts. Messages are
+ *    stored rarely, so one lock guards whole store.
+ *    Changed segments are forced to disk in group, at most FLUSH_DELAY
+ *    after change. Mapped memory survives crash of server process, but
+ *    if whole machine stops, changes of that window can be lost.
+ *
+ */
+
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class OfflineMessageStore
+{
+	// Properties:
+
+	// Segment with other magic has older record format and is skipped:
+	private static final int SEGMENT_MAGIC = 0x4E434F32;
+	private static final int SEGMENT_HEADER_LENGTH = 8;
+
+	// Record: length, state, expiry time, lengths of recipient name
+	// and key, then name, key and frame:
+	private static final int RECORD_HEADER_LENGTH = 4 + 1 + 8 + 2 + 2;
+	private static final byte STATE_LIVE = 1;
+	private static final byte STATE_DONE = 2;
+
+	// Segment less than this part full of live records is compacted:
+	private static final int COMPACT_RATIO = 4;
+	private static final long COMPACT_INTERVAL = 60 * 1000;
+	private static final long FLUSH_DELAY = 100;
+
+	// Clients that left, so message sent to their old session id or
+	// to their name can be stored for them:
+	private static final int MAX_DEPARTED_CLIENTS = 64 * 1024;
+
+	private Path directory = null;
+	private int segmentSize = 0;
+	private int maxSegments = 0;
+	private long timeToLive = 0;
+	private int maxMessagesPerRecipient = 0;
+
+	private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+	private final HashMap<String, ArrayDeque<StoredRecord>> recipients = new HashMap<String, ArrayDeque<StoredRecord>>();
+	private final DepartedClients departedClients = new DepartedClients();
+	private final HashMap<String, ClientInfoModel> departedNames = new HashMap<String, ClientInfoModel>();
+	private Segment activeSegment = null;
+	private long nextSegmentId = 1;
+	private int storedCount = 0;
+	private boolean flushScheduled = false;
+	private final List<Path> pendingDeletes = new ArrayList<Path>();
+	private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, "OfflineStoreCompactor");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// Default constructor:
+
+	public OfflineMessageStore(Path directory, int segmentSize, long maxSize, long timeToLive, int maxMessagesPerRecipient) throws IOException
+	{
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = (int)Math.max(1, Math.min(Integer.MAX_VALUE, maxSize / segmentSize));
+		this.timeToLive = timeToLive;
+		this.maxMessagesPerRecipient = maxMessagesPerRecipient;
+
+		Files.createDirectories(directory);
+		this.loadSegments();
+		this.compactor.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				compact();
+			}
+		}, COMPACT_INTERVAL, COMPACT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	// Getter methods:
+
+	public synchronized int getStoredCount()
+	{
+		return this.storedCount;
+	}
+
+	public synchronized int getSegmentCount()
+	{
+		return this.segments.size();
+	}
+
+	// Class methods:
+
+	// Remember client that left, so it can get messages sent to it
+	// after it left:
+
+	public synchronized void clientLeft(ClientInfoModel clientInfo)
+	{
+		this.departedClients.put(clientInfo.getClientId(), clientInfo);
+		this.departedNames.put(clientInfo.getName(), clientInfo);
+	}
+
+	// Store message sent to old session id of client that left.
+	// Returns false if recipient is unknown or message cannot be
+	// stored:
+
+	public synchronized boolean storeMessage(int recipientId, SocketMessage data)
+	{
+		ClientInfoModel recipient = this.departedClients.get(recipientId);
+		if(recipient == null)
+		{
+			return false;
+		}
+		return this.storeRecord(recipient, data);
+	}
+
+	// Store message addressed to name and key of client. Returns false
+	// unless client with this name and key was last to leave under it:
+
+	public synchronized boolean storeMessage(ClientInfoModel recipientInfo, SocketMessage data)
+	{
+		ClientInfoModel recipient = this.departedNames.get(recipientInfo.getName());
+		if(recipient == null || Arrays.equals(encodeKey(recipient.getPublicKey()), encodeKey(recipientInfo.getPublicKey())) == false)
+		{
+			return false;
+		}
+		return this.storeRecord(recipient, data);
+	}
+
+	// Store client message encrypted with key of recipient. Returns
+	// false if recipient has too many stored messages or message
+	// does not fit into store:
+
+	private boolean storeRecord(ClientInfoModel recipientInfo, SocketMessage data)
+	{
+		String recipient = recipientInfo.getName();
+		ArrayDeque<StoredRecord> records = this.recipients.get(recipient);
+		if(records != null && records.size() >= this.maxMessagesPerRecipient)
+		{
+			return false;
+		}
+
+		try
+		{
+			byte[] frame = null;
+			if(data instanceof RelayMessage)
+			{
+				frame = ((RelayMessage)data).getFrame();
+			}
+			else
+			{
+				frame = SocketMessageCodec.encode(data, SocketMessageCodec.BINARY, false);
+			}
+			StoredRecord record = this.append(recipient.getBytes(StandardCharsets.UTF_8), encodeKey(recipientInfo.getPublicKey()), frame, System.currentTimeMillis() + this.timeToLive, false);
+			if(record == null)
+			{
+				return false;
+			}
+			this.index(recipient, record);
+			this.scheduleFlush();
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot store offline message > " + e.getMessage());
+			return false;
+		}
+	}
+
+	// Take all messages stored for client with its key, addressed
+	// to its new session id. Messages keep time they were sent, and
+	// messages for other key are dropped:
+
+	public synchronized List<ClientMessage> takeMessages(ClientInfoModel recipient)
+	{
+		List<ClientMessage> messages = new ArrayList<ClientMessage>();
+		ArrayDeque<StoredRecord> records = this.recipients.remove(recipient.getName());
+		if(records == null)
+		{
+			return messages;
+		}
+
+		long now = System.currentTimeMillis();
+		byte[] key = encodeKey(recipient.getPublicKey());
+		for(StoredRecord record : records)
+		{
+			if(record.expiresAt > now && Arrays.equals(record.segment.readKey(record.offset), key) == true)
+			{
+				try
+				{
+					ClientMessage stored = decodeMessage(record.segment.readFrame(record.offset));
+					ClientMessage message = new ClientMessage(stored.getSenderId(), recipient.getClientId(), stored.getMessage());
+					message.setTimeMillis(stored.getTimeMillis());
+					messages.add(message);
+				}
+				catch (IOException e)
+				{
+					System.err.println("Server: Cannot read offline message > " + e.getMessage());
+				}
+			}
+			this.release(record);
+		}
+		this.scheduleFlush();
+		return messages;
+	}
+
+	// Force mapped segments to disk and stop compaction:
+
+	public synchronized void close()
+	{
+		this.compactor.shutdown();
+		for(Segment segment : this.segments.values())
+		{
+			segment.buffer.force();
+			segment.dirty = false;
+		}
+	}
+
+	// Force segments changed since last flush. Buffers are taken under
+	// lock, but written to disk without it, so storing is not blocked:
+
+	public void flush()
+	{
+		List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>();
+		synchronized(this)
+		{
+			this.flushScheduled = false;
+			for(Segment segment : this.segments.values())
+			{
+				if(segment.dirty == true)
+				{
+					segment.dirty = false;
+					buffers.add(segment.buffer);
+				}
+			}
+		}
+		for(MappedByteBuffer buffer : buffers)
+		{
+			buffer.force();
+		}
+	}
+
+	// Changes made until flush runs are forced together:
+
+	private void scheduleFlush()
+	{
+		if(this.flushScheduled == true || this.compactor.isShutdown() == true)
+		{
+			return;
+		}
+		this.flushScheduled = true;
+		this.compactor.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				flush();
+			}
+		}, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	// Expire old records, delete segments without live records and
+	// move live records out of mostly empty segments:
+
+	public synchronized void compact()
+	{
+		long now = System.currentTimeMillis();
+		Iterator<ArrayDeque<StoredRecord>> recipientIterator = this.recipients.values().iterator();
+		while(recipientIterator.hasNext() == true)
+		{
+			ArrayDeque<StoredRecord> records = recipientIterator.next();
+			Iterator<StoredRecord> recordIterator = records.iterator();
+			while(recordIterator.hasNext() == true)
+			{
+				StoredRecord record = recordIterator.next();
+				if(record.expiresAt <= now)
+				{
+					recordIterator.remove();
+					this.release(record);
+				}
+			}
+			if(records.isEmpty() == true)
+			{
+				recipientIterator.remove();
+			}
+		}
+
+		for(Segment segment : new ArrayList<Segment>(this.segments.values()))
+		{
+			if(segment != this.activeSegment && segment.liveRecords > 0 && segment.liveBytes * COMPACT_RATIO < this.segmentSize)
+			{
+				this.moveLiveRecords(segment);
+			}
+		}
+		this.retryDeletes();
+		this.scheduleFlush();
+	}
+
+	private void moveLiveRecords(Segment segment)
+	{
+		for(Map.Entry<String, ArrayDeque<StoredRecord>> entry : this.recipients.entrySet())
+		{
+			byte[] recipient = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			for(StoredRecord record : entry.getValue())
+			{
+				if(record.segment != segment)
+				{
+					continue;
+				}
+				StoredRecord moved = this.append(recipient, segment.readKey(record.offset), segment.readFrame(record.offset), record.expiresAt, true);
+				if(moved == null)
+				{
+					return;
+				}
+				this.release(record);
+				record.segment = moved.segment;
+				record.offset = moved.offset;
+			}
+		}
+	}
+
+	// Mark record as done and delete its segment when nothing in it
+	// is live any more:
+
+	private void release(StoredRecord record)
+	{
+		Segment segment = record.segment;
+		segment.buffer.put(record.offset + 4, STATE_DONE);
+		segment.dirty = true;
+		segment.liveRecords--;
+		segment.liveBytes -= segment.buffer.getInt(record.offset);
+		this.storedCount--;
+		if(segment.liveRecords == 0 && segment != this.activeSegment)
+		{
+			this.deleteSegment(segment);
+		}
+	}
+
+	private void index(String recipient, StoredRecord record)
+	{
+		ArrayDeque<StoredRecord> records = this.recipients.get(recipient);
+		if(records == null)
+		{
+			records = new ArrayDeque<StoredRecord>();
+			this.recipients.put(recipient, records);
+		}
+		records.add(record);
+	}
+
+	// Returns null if record is larger than segment, or if new segment
+	// is needed and store is full. Compaction can go one segment over
+	// limit, because segment it moves records from is deleted after:
+
+	private StoredRecord append(byte[] recipient, byte[] key, byte[] frame, long expiresAt, boolean compacting)
+	{
+		int length = RECORD_HEADER_LENGTH + recipient.length + key.length + frame.length;
+		if(length > this.segmentSize - SEGMENT_HEADER_LENGTH || recipient.length > Short.MAX_VALUE || key.length > Short.MAX_VALUE)
+		{
+			return null;
+		}
+		try
+		{
+			if(this.activeSegment == null || this.activeSegment.writePosition + length > this.segmentSize)
+			{
+				if(compacting == false && this.segments.size() >= this.maxSegments)
+				{
+					return null;
+				}
+				this.rollSegment();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot create offline message segment > " + e.getMessage());
+			return null;
+		}
+
+		Segment segment = this.activeSegment;
+		int offset = segment.writePosition;
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(offset + 4);
+		buffer.put(STATE_LIVE);
+		buffer.putLong(expiresAt);
+		buffer.putShort((short)recipient.length);
+		buffer.putShort((short)key.length);
+		buffer.put(recipient);
+		buffer.put(key);
+		buffer.put(frame);
+
+		// Length is written last, so record is complete when reader
+		// of segment finds it:
+		segment.buffer.putInt(offset, length);
+		segment.writePosition += length;
+		segment.liveRecords++;
+		segment.liveBytes += length;
+		segment.dirty = true;
+		this.storedCount++;
+		return new StoredRecord(segment, offset, expiresAt);
+	}
+
+	private void rollSegment() throws IOException
+	{
+		if(this.activeSegment != null)
+		{
+			this.activeSegment.buffer.force();
+			if(this.activeSegment.liveRecords == 0)
+			{
+				this.deleteSegment(this.activeSegment);
+			}
+		}
+		// Ids are not used again, file of deleted segment may still exist:
+		long segmentId = this.nextSegmentId++;
+		Segment segment = new Segment(segmentId, this.directory.resolve(String.format("offline-%012d.seg", segmentId)), this.segmentSize);
+		segment.buffer.putInt(0, SEGMENT_MAGIC);
+		segment.buffer.putInt(4, this.segmentSize);
+		segment.writePosition = SEGMENT_HEADER_LENGTH;
+		this.segments.put(segmentId, segment);
+		this.activeSegment = segment;
+	}
+
+	// Segment drops its buffer first, so nothing but garbage collector
+	// keeps mapping. File that cannot be deleted while it is still
+	// mapped, as on some systems, is deleted by later compaction:
+
+	private void deleteSegment(Segment segment)
+	{
+		this.segments.remove(segment.id);
+		if(this.activeSegment == segment)
+		{
+			this.activeSegment = null;
+		}
+		segment.buffer = null;
+		try
+		{
+			Files.deleteIfExists(segment.path);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot delete offline message segment " + segment.path + " yet > " + e.getMessage());
+			this.pendingDeletes.add(segment.path);
+		}
+	}
+
+	private void retryDeletes()
+	{
+		Iterator<Path> pathIterator = this.pendingDeletes.iterator();
+		while(pathIterator.hasNext() == true)
+		{
+			try
+			{
+				Files.deleteIfExists(pathIterator.next());
+				pathIterator.remove();
+			}
+			catch (IOException e)
+			{
+
+			}
+		}
+	}
+
+	// Map existing segments and index their live records. Last
+	// segment is used for new records:
+
+	private void loadSegments() throws IOException
+	{
+		List<Path> paths = new ArrayList<Path>();
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "offline-*.seg"))
+		{
+			for(Path path : files)
+			{
+				paths.add(path);
+			}
+		}
+
+		// Directory lists files in any order, but records of older
+		// segment have to be indexed first, so names with zero padded
+		// ids are sorted:
+		Collections.sort(paths);
+
+		long now = System.currentTimeMillis();
+		for(Path path : paths)
+		{
+			String fileName = path.getFileName().toString();
+			long segmentId = 0;
+			try
+			{
+				segmentId = Long.parseLong(fileName.substring("offline-".length(), fileName.length() - ".seg".length()));
+			}
+			catch (NumberFormatException e)
+			{
+				continue;
+			}
+			this.nextSegmentId = Math.max(this.nextSegmentId, segmentId + 1);
+			int size = (int)Math.min(Files.size(path), Integer.MAX_VALUE);
+			if(size < SEGMENT_HEADER_LENGTH)
+			{
+				Files.delete(path);
+				continue;
+			}
+			Segment segment = new Segment(segmentId, path, size);
+			if(segment.buffer.getInt(0) != SEGMENT_MAGIC)
+			{
+				System.err.println("Server: Skipping unknown offline message segment " + path);
+				continue;
+			}
+			this.segments.put(segmentId, segment);
+			this.loadRecords(segment, now);
+		}
+
+		for(Segment segment : new ArrayList<Segment>(this.segments.values()))
+		{
+			if(segment.liveRecords == 0)
+			{
+				this.deleteSegment(segment);
+			}
+		}
+		if(this.segments.isEmpty() == false)
+		{
+			Segment lastSegment = this.segments.lastEntry().getValue();
+			if(lastSegment.buffer.capacity() == this.segmentSize)
+			{
+				this.activeSegment = lastSegment;
+			}
+		}
+	}
+
+	private void loadRecords(Segment segment, long now)
+	{
+		int offset = SEGMENT_HEADER_LENGTH;
+		MappedByteBuffer buffer = segment.buffer;
+		while(offset + RECORD_HEADER_LENGTH <= buffer.capacity())
+		{
+			int length = buffer.getInt(offset);
+			if(length < RECORD_HEADER_LENGTH || offset + length > buffer.capacity())
+			{
+				break;
+			}
+			long expiresAt = buffer.getLong(offset + 5);
+			if(buffer.get(offset + 4) == STATE_LIVE)
+			{
+				if(expiresAt > now)
+				{
+					byte[] recipient = new byte[buffer.getShort(offset + 13)];
+					ByteBuffer recordBuffer = buffer.duplicate();
+					recordBuffer.position(offset + RECORD_HEADER_LENGTH);
+					recordBuffer.get(recipient);
+					segment.liveRecords++;
+					segment.liveBytes += length;
+					this.storedCount++;
+					this.index(new String(recipient, StandardCharsets.UTF_8), new StoredRecord(segment, offset, expiresAt));
+				}
+				else
+				{
+					buffer.put(offset + 4, STATE_DONE);
+					segment.dirty = true;
+				}
+			}
+			offset += length;
+		}
+		segment.writePosition = offset;
+	}
+
+	// Key is compared as bytes: length of modulus, modulus and
+	// exponent:
+
+	private static byte[] encodeKey(PublicRSAKey publicKey)
+	{
+		if(publicKey == null)
+		{
+			return new byte[0];
+		}
+		byte[] n = publicKey.getN().toByteArray();
+		byte[] e = publicKey.getE().toByteArray();
+		ByteBuffer key = ByteBuffer.allocate(4 + n.length + e.length);
+		key.putInt(n.length);
+		key.put(n);
+		key.put(e);
+		return key.array();
+	}
+
+	private static ClientMessage decodeMessage(byte[] frame) throws IOException
+	{
+		SocketMessage data = SocketMessageCodec.decode(frame, SocketMessageCodec.HEADER_LENGTH, frame.length - SocketMessageCodec.HEADER_LENGTH);
+		if(data instanceof RelayMessage)
+		{
+			data = ((RelayMessage)data).decodeMessage();
+		}
+		if(data instanceof ClientMessage == false)
+		{
+			throw new IOException("Offline record is not client message");
+		}
+
+		// Decoding stamps message with time of decoding, stored frame
+		// has time it was sent:
+		ClientMessage message = (ClientMessage)data;
+		message.setTimeMillis(readFrameTime(frame));
+		return message;
+	}
+
+	private static long readFrameTime(byte[] frame)
+	{
+		long timeMillis = 0;
+		int offset = SocketMessageCodec.HEADER_LENGTH + 1 + BinaryMessageCodec.TIME_OFFSET;
+		for(int i = 0; i < 8; i++)
+		{
+			timeMillis = (timeMillis << 8) | (frame[offset + i] & 0xFF);
+		}
+		return timeMillis;
+	}
+
+	// Inner classes:
+
+	static class Segment
+	{
+		private long id = 0;
+		private Path path = null;
+		private MappedByteBuffer buffer = null;
+		private int writePosition = 0;
+		private int liveRecords = 0;
+		private long liveBytes = 0;
+		private boolean dirty = false;
+
+		// File is mapped once, mapping stays valid after channel is
+		// closed:
+
+		public Segment(long id, Path path, int size) throws IOException
+		{
+			this.id = id;
+			this.path = path;
+			try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+		}
+
+		public byte[] readKey(int offset)
+		{
+			int recipientLength = this.buffer.getShort(offset + 13);
+			byte[] key = new byte[this.buffer.getShort(offset + 15)];
+			ByteBuffer recordBuffer = this.buffer.duplicate();
+			recordBuffer.position(offset + RECORD_HEADER_LENGTH + recipientLength);
+			recordBuffer.get(key);
+			return key;
+		}
+
+		public byte[] readFrame(int offset)
+		{
+			int length = this.buffer.getInt(offset);
+			int skipped = this.buffer.getShort(offset + 13) + this.buffer.getShort(offset + 15);
+			byte[] frame = new byte[length - RECORD_HEADER_LENGTH - skipped];
+			ByteBuffer recordBuffer = this.buffer.duplicate();
+			recordBuffer.position(offset + RECORD_HEADER_LENGTH + skipped);
+			recordBuffer.get(frame);
+			return frame;
+		}
+	}
+
+	static class StoredRecord
+	{
+		private Segment segment = null;
+		private int offset = 0;
+		private long expiresAt = 0;
+
+		public StoredRecord(Segment segment, int offset, long expiresAt)
+		{
+			this.segment = segment;
+			this.offset = offset;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	// Oldest client that left is forgotten by id and, unless other
+	// client left with its name later, by name:
+
+	class DepartedClients extends LinkedHashMap<Integer, ClientInfoModel>
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, ClientInfoModel> eldest)
+		{
+			if(this.size() > MAX_DEPARTED_CLIENTS)
+			{
+				departedNames.remove(eldest.getValue().getName(), eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	}
+}
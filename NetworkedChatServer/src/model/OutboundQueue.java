@@ -0,0 +1,254 @@
+/* File: OutboundQueue.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is queue of frames waiting to be written to one
+ *    client. Any thread can add frames, and only writer of connection
+ *    takes them. Queue counts frames and bytes it holds, and when
+ *    they go over slow consumer limit, it takes policy action and
+ *    tells its listener that client is falling behind, caught up
+ *    again or has to be disconnected.
+ *
+ */
+
+package model;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OutboundQueue
+{
+	// Properties:
+
+	private SlowConsumerPolicy policy = null;
+	private volatile LagListener lagListener = null;
+	private final Queue<QueuedFrame> frames = new ConcurrentLinkedQueue<QueuedFrame>();
+	private final AtomicInteger queuedFrames = new AtomicInteger();
+	private final AtomicLong queuedBytes = new AtomicLong();
+	private final AtomicLong droppedFrames = new AtomicLong();
+	private final AtomicBoolean lagging = new AtomicBoolean(false);
+
+	// Default constructor:
+
+	public OutboundQueue(SlowConsumerPolicy policy)
+	{
+		this.policy = policy;
+	}
+
+	// Getter methods:
+
+	public boolean isEmpty()
+	{
+		return this.frames.isEmpty();
+	}
+
+	public boolean isLagging()
+	{
+		return this.lagging.get();
+	}
+
+	public int getQueuedFrames()
+	{
+		return this.queuedFrames.get();
+	}
+
+	public long getQueuedBytes()
+	{
+		return this.queuedBytes.get();
+	}
+
+	// Frames dropped or collapsed by slow consumer policy:
+
+	public long getDroppedFrames()
+	{
+		return this.droppedFrames.get();
+	}
+
+	// Milliseconds the oldest queued frame has been waiting:
+
+	public long getLagMillis()
+	{
+		QueuedFrame oldest = this.frames.peek();
+		if(oldest == null)
+		{
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedTime);
+	}
+
+	public String getLagReport()
+	{
+		return this.getQueuedFrames() + " frames (" + (this.getQueuedBytes() / 1024) + " KB) queued, oldest " + this.getLagMillis() + " ms, " + this.getDroppedFrames() + " dropped";
+	}
+
+	// Setter methods:
+
+	public void setLagListener(LagListener lagListener)
+	{
+		this.lagListener = lagListener;
+	}
+
+	// Class methods:
+
+	// Queue frame of given message. Returns false when client went
+	// over hard limit and has to be disconnected, frame dropped by
+	// policy is not an error:
+
+	public boolean offer(byte[] frame, SocketMessage message)
+	{
+		MessageKind messageKind = message.getMessageKind();
+		int frameCount = this.queuedFrames.incrementAndGet();
+		long byteCount = this.queuedBytes.addAndGet(frame.length);
+		if(this.policy.isOverLimit(frameCount, byteCount) == true)
+		{
+			this.startLagging();
+			if(this.policy.getAction() == SlowConsumerPolicy.Action.DROP_BROADCASTS && messageKind == MessageKind.BROADCAST)
+			{
+				this.release(frame.length);
+				this.droppedFrames.incrementAndGet();
+				return true;
+			}
+			if(this.policy.getAction() == SlowConsumerPolicy.Action.COALESCE_UPDATES && messageKind == MessageKind.CLIENT_UPDATE)
+			{
+				this.removeSuperseded(((ClientUpdateMessage)message).getVersion());
+			}
+			if(this.policy.isOverHardLimit(this.queuedFrames.get(), this.queuedBytes.get()) == true)
+			{
+				this.release(frame.length);
+				LagListener listener = this.lagListener;
+				if(listener != null)
+				{
+					listener.queueOverflow("outbound queue went over " + this.policy.getMaxFrames() + " frames or " + (this.policy.getMaxBytes() / 1024) + " KB");
+				}
+				return false;
+			}
+		}
+		this.frames.add(new QueuedFrame(frame, messageKind, getRosterVersion(message)));
+		return true;
+	}
+
+	// Called only by writer of connection. Returns null when
+	// queue is empty:
+
+	public byte[] poll()
+	{
+		QueuedFrame queued = this.take();
+		if(queued == null)
+		{
+			return null;
+		}
+		if(this.lagging.get() == true && this.policy.isCaughtUp(this.queuedFrames.get(), this.queuedBytes.get()) == true && this.lagging.compareAndSet(true, false) == true)
+		{
+			LagListener listener = this.lagListener;
+			if(listener != null)
+			{
+				listener.queueCaughtUp();
+			}
+		}
+		return queued.frame;
+	}
+
+	// Drop all queued frames of closed connection:
+
+	public void clear()
+	{
+		while(this.take() != null)
+		{
+
+		}
+	}
+
+	private QueuedFrame take()
+	{
+		QueuedFrame queued = this.frames.poll();
+		if(queued != null)
+		{
+			this.release(queued.frame.length);
+		}
+		return queued;
+	}
+
+	private void release(int frameLength)
+	{
+		this.queuedFrames.decrementAndGet();
+		this.queuedBytes.addAndGet(-frameLength);
+	}
+
+	private void startLagging()
+	{
+		if(this.lagging.compareAndSet(false, true) == true)
+		{
+			LagListener listener = this.lagListener;
+			if(listener != null)
+			{
+				listener.queueLagging();
+			}
+		}
+	}
+
+	// Whole client list makes queued lists and changes up to its
+	// version useless. Changes with later version are kept, because
+	// list could have been read before they were made:
+
+	private void removeSuperseded(int version)
+	{
+		for(QueuedFrame queued : this.frames)
+		{
+			boolean rosterFrame = queued.messageKind == MessageKind.CLIENT_UPDATE || queued.messageKind == MessageKind.CLIENT_DELTA;
+			if(rosterFrame == true && queued.version <= version && this.frames.remove(queued) == true)
+			{
+				this.release(queued.frame.length);
+				this.droppedFrames.incrementAndGet();
+			}
+		}
+	}
+
+	private static int getRosterVersion(SocketMessage message)
+	{
+		if(message instanceof ClientUpdateMessage)
+		{
+			return ((ClientUpdateMessage)message).getVersion();
+		}
+		if(message instanceof ClientDeltaMessage)
+		{
+			return ((ClientDeltaMessage)message).getVersion();
+		}
+		return 0;
+	}
+
+	// Inner classes:
+
+	public interface LagListener
+	{
+		public void queueLagging();
+		public void queueCaughtUp();
+		public void queueOverflow(String reason);
+	}
+
+	static class QueuedFrame
+	{
+		private byte[] frame = null;
+		private MessageKind messageKind = null;
+		private int version = 0;
+		private long queuedTime = 0;
+
+		public QueuedFrame(byte[] frame, MessageKind messageKind, int version)
+		{
+			this.frame = frame;
+			this.messageKind = messageKind;
+			this.version = version;
+			this.queuedTime = System.nanoTime();
+		}
+	}
+}
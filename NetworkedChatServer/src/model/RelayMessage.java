@@ -0,0 +1,68 @@
+/* File: RelayMessage.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is binary client message that server only forwards.
+ *    Server never decrypts client messages, so only recipient and sender
+ *    ids are read from routing header and received frame is written to
+ *    recipient as it is. Message is decoded only for recipient that
+ *    uses other message format.
+ *
+ */
+
+package model;
+
+import java.io.IOException;
+
+public class RelayMessage extends SocketMessage
+{
+	// Properties:
+
+	private byte[] frame = null;
+	private int recipientId = 0;
+	private int senderId = 0;
+
+	// Default constructor:
+
+	public RelayMessage(byte[] frame, int recipientId, int senderId)
+	{
+		super(MessageKind.CLIENT_MESSAGE);
+		this.frame = frame;
+		this.recipientId = recipientId;
+		this.senderId = senderId;
+	}
+
+	// Getter methods:
+
+	// Complete frame (header and payload) as it was received:
+
+	public byte[] getFrame()
+	{
+		return this.frame;
+	}
+
+	public int getRecipientId()
+	{
+		return this.recipientId;
+	}
+
+	public int getSenderId()
+	{
+		return this.senderId;
+	}
+
+	// Class methods:
+
+	public SocketMessage decodeMessage() throws IOException
+	{
+		int payloadOffset = SocketMessageCodec.HEADER_LENGTH + 1;
+		return SocketMessageCodec.BINARY.decode(this.frame, payloadOffset, this.frame.length - payloadOffset);
+	}
+}
@@ -0,0 +1,201 @@
+/* File: RoomIndex.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is subscription index from chat room name to its
+ *    members. Members of every room are kept in copy-on-write array,
+ *    so message for room is sent to its current members without
+ *    locking and costs only as much as room is large. Joins and
+ *    leaves of one room are atomic steps of concurrent map, and
+ *    room without members is removed from index. Every client also
+ *    keeps names of its rooms, so it leaves all of them when it
+ *    disconnects.
+ *
+ */
+
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+public class RoomIndex
+{
+	// Properties:
+
+	public static final int MAX_ROOM_NAME_LENGTH = 64;
+
+	private static final ClientModel[] NO_MEMBERS = new ClientModel[0];
+
+	private final ConcurrentHashMap<String, ClientModel[]> rooms = new ConcurrentHashMap<String, ClientModel[]>();
+	private int maxRoomsPerClient = 0;
+
+	// Default constructor:
+
+	public RoomIndex(int maxRoomsPerClient)
+	{
+		this.maxRoomsPerClient = maxRoomsPerClient;
+	}
+
+	// Getter methods:
+
+	// Returned array is never changed, joins and leaves replace it
+	// with new one:
+
+	public ClientModel[] getMembers(String room)
+	{
+		ClientModel[] members = this.rooms.get(room);
+		return members == null ? NO_MEMBERS : members;
+	}
+
+	public int getRoomCount()
+	{
+		return this.rooms.size();
+	}
+
+	public boolean isMember(String room, ClientModel client)
+	{
+		return indexOf(this.getMembers(room), client) >= 0;
+	}
+
+	// Room name has to be short and printable:
+
+	public static boolean isValidName(String room)
+	{
+		if(room == null || room.isEmpty() == true || room.length() > MAX_ROOM_NAME_LENGTH)
+		{
+			return false;
+		}
+		for(int i = 0; i < room.length(); i++)
+		{
+			if(Character.isWhitespace(room.charAt(i)) == true || Character.isISOControl(room.charAt(i)) == true)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Class methods:
+
+	// Returns false if client already is in as many rooms as it may be:
+
+	public boolean join(String room, ClientModel client)
+	{
+		if(client.getRooms().contains(room) == true)
+		{
+			return true;
+		}
+		if(client.getRooms().size() >= this.maxRoomsPerClient)
+		{
+			return false;
+		}
+		client.getRooms().add(room);
+		this.rooms.compute(room, new AddMember(client));
+		return true;
+	}
+
+	// Returns false if client was not member of room:
+
+	public boolean leave(String room, ClientModel client)
+	{
+		if(client.getRooms().remove(room) == false)
+		{
+			return false;
+		}
+		this.rooms.computeIfPresent(room, new RemoveMember(client));
+		return true;
+	}
+
+	// Remove client that left chat from all its rooms:
+
+	public void leaveAll(ClientModel client)
+	{
+		for(String room : client.getRooms())
+		{
+			this.leave(room, client);
+		}
+	}
+
+	public void clear()
+	{
+		this.rooms.clear();
+	}
+
+	private static int indexOf(ClientModel[] members, ClientModel client)
+	{
+		for(int i = 0; i < members.length; i++)
+		{
+			if(members[i] == client)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// Inner classes:
+
+	static class AddMember implements BiFunction<String, ClientModel[], ClientModel[]>
+	{
+		private ClientModel client = null;
+
+		public AddMember(ClientModel client)
+		{
+			this.client = client;
+		}
+
+		@Override
+		public ClientModel[] apply(String room, ClientModel[] members)
+		{
+			if(members == null)
+			{
+				return new ClientModel[] { this.client };
+			}
+			if(indexOf(members, this.client) >= 0)
+			{
+				return members;
+			}
+			ClientModel[] updated = Arrays.copyOf(members, members.length + 1);
+			updated[members.length] = this.client;
+			return updated;
+		}
+	}
+
+	// Returning null removes room that has no members left:
+
+	static class RemoveMember implements BiFunction<String, ClientModel[], ClientModel[]>
+	{
+		private ClientModel client = null;
+
+		public RemoveMember(ClientModel client)
+		{
+			this.client = client;
+		}
+
+		@Override
+		public ClientModel[] apply(String room, ClientModel[] members)
+		{
+			int index = indexOf(members, this.client);
+			if(index < 0)
+			{
+				return members;
+			}
+			if(members.length == 1)
+			{
+				return null;
+			}
+			ClientModel[] updated = new ClientModel[members.length - 1];
+			System.arraycopy(members, 0, updated, 0, index);
+			System.arraycopy(members, index + 1, updated, index, members.length - index - 1);
+			return updated;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/* File: RoomMessage.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is concrete class from SocketMessage class, and
+ *    used by client to join or leave named chat room. Server answers
+ *    with the same message that tells if client is member of room
+ *    after request, and how many members room has.
+ *
+ */
+
+package model;
+
+public class RoomMessage extends SocketMessage
+{
+	// Properties:
+
+	private String room = null;
+	private boolean joined = false;
+	private int memberCount = 0;
+
+	// Default constructor:
+
+	public RoomMessage(ClientInfoModel sender, String room, boolean joined)
+	{
+		super(sender, MessageKind.ROOM);
+		this.room = room;
+		this.joined = joined;
+	}
+
+	// Getter methods:
+
+	public String getRoom()
+	{
+		return this.room;
+	}
+
+	// Request to join room, or membership in server answer:
+
+	public boolean isJoined()
+	{
+		return this.joined;
+	}
+
+	// Set only in server answer:
+
+	public int getMemberCount()
+	{
+		return this.memberCount;
+	}
+
+	// Setter methods:
+
+	public void setJoined(boolean joined)
+	{
+		this.joined = joined;
+	}
+
+	public void setMemberCount(int memberCount)
+	{
+		this.memberCount = memberCount;
+	}
+}
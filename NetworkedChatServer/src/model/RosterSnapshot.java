@@ -0,0 +1,105 @@
+/* File: RosterSnapshot.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is immutable list of connected clients at one roster
+ *    version. Every join and leave creates new snapshot instead of
+ *    changing current one, so snapshot can be read and encoded by any
+ *    thread without locking. Client list message of snapshot is kept
+ *    as frame, so it is encoded once for all clients that ask for it.
+ *
+ */
+
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RosterSnapshot
+{
+	// Properties:
+
+	private int version = 0;
+	private List<ClientInfoModel> clients = null;
+	private Frame frame = null;
+
+	// Default constructor:
+
+	public RosterSnapshot()
+	{
+		this(0, new ArrayList<ClientInfoModel>());
+	}
+
+	// List is owned by snapshot and never changed after this:
+
+	private RosterSnapshot(int version, ArrayList<ClientInfoModel> clientList)
+	{
+		this.version = version;
+		this.clients = Collections.unmodifiableList(clientList);
+		this.frame = new Frame(new ClientUpdateMessage(clientList, version));
+	}
+
+	// Getter methods:
+
+	public int getVersion()
+	{
+		return this.version;
+	}
+
+	public List<ClientInfoModel> getClients()
+	{
+		return this.clients;
+	}
+
+	// Returns null if no client has this name. List is searched, as
+	// it is only needed for messages to users that are not connected:
+
+	public ClientInfoModel getClient(String name)
+	{
+		for(ClientInfoModel clientInfo : this.clients)
+		{
+			if(clientInfo.getName().equals(name) == true)
+			{
+				return clientInfo;
+			}
+		}
+		return null;
+	}
+
+	// Whole client list message of this version:
+
+	public Frame getFrame()
+	{
+		return this.frame;
+	}
+
+	// Class methods:
+
+	public RosterSnapshot withJoined(ClientInfoModel clientInfo)
+	{
+		ArrayList<ClientInfoModel> clientList = new ArrayList<ClientInfoModel>(this.clients.size() + 1);
+		clientList.addAll(this.clients);
+		clientList.add(clientInfo);
+		return new RosterSnapshot(this.version + 1, clientList);
+	}
+
+	// Returns this snapshot if client is not in it:
+
+	public RosterSnapshot withLeft(ClientInfoModel clientInfo)
+	{
+		ArrayList<ClientInfoModel> clientList = new ArrayList<ClientInfoModel>(this.clients);
+		if(clientList.remove(clientInfo) == false)
+		{
+			return this;
+		}
+		return new RosterSnapshot(this.version + 1, clientList);
+	}
+}
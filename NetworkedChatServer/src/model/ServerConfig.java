@@ -0,0 +1,717 @@
+/* File: ServerConfig.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is container for server start up settings.
+ *    Settings are read from command line arguments in form
+ *    --name=value, for example: --mode=nio --event-loops=4
+ *    or --mode=virtual --stream-buffer=2048. Argument --config=file
+ *    loads the same settings from properties file (name=value per
+ *    line), and arguments given after it override file values.
+ *
+ */
+
+package model;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+public class ServerConfig
+{
+	// Properties:
+
+	private boolean headless = false;
+	private int port = 0;
+	private String bindAddress = null;
+	private int backlog = 50;
+	private ExecutionMode executionMode = ExecutionMode.THREADED;
+	private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+	private int streamBufferSize = 8192;
+	private int shardQueueSize = 1024;
+	private int handshakeThreads = 2 * Runtime.getRuntime().availableProcessors();
+	private int handshakeTimeout = 5000;
+	private int handshakeQueueSize = 4096;
+	private MessageCodec wireFormat = SocketMessageCodec.BINARY;
+	private boolean compression = false;
+	private FlushPolicy.Mode flushMode = FlushPolicy.Mode.ADAPTIVE;
+	private int flushDelay = 2;
+	private int outboundQueueSize = 1024;
+	private int outboundQueueLimit = 4096;
+	private SlowConsumerPolicy.Action slowConsumerAction = SlowConsumerPolicy.Action.DISCONNECT;
+	private int fanOutThreads = Runtime.getRuntime().availableProcessors();
+	private int fanOutStripe = 256;
+	private int maxRoomsPerClient = 32;
+	private int nodeId = 0;
+	private List<InetSocketAddress> clusterNodes = Collections.emptyList();
+	private String offlineDirectory = null;
+	private int offlineTimeToLive = 24 * 60;
+	private int offlineSegmentSize = 4;
+	private int offlineMaxSize = 256;
+	private int offlineMaxMessages = 256;
+	private String logFile = null;
+	private int logMaxSize = 10;
+	private int logRotateInterval = 24 * 60;
+	private boolean logCompress = true;
+	private int logBufferSize = 8192;
+	private int logSampleRate = 20;
+	private int logViewCapacity = 5000;
+
+	// Default constructor:
+
+	public ServerConfig()
+	{
+
+	}
+
+	// Getter methods:
+
+	public boolean isHeadless()
+	{
+		return this.headless;
+	}
+
+	public int getPort()
+	{
+		return this.port;
+	}
+
+	// Returns null when server listens on all interfaces:
+
+	public String getBindAddress()
+	{
+		return this.bindAddress;
+	}
+
+	public int getBacklog()
+	{
+		return this.backlog;
+	}
+
+	public ExecutionMode getExecutionMode()
+	{
+		return this.executionMode;
+	}
+
+	public int getEventLoopThreads()
+	{
+		return this.eventLoopThreads;
+	}
+
+	public int getStreamBufferSize()
+	{
+		return this.streamBufferSize;
+	}
+
+	// Direct messages that can wait to pass from one event loop
+	// to other one:
+
+	public int getShardQueueSize()
+	{
+		return this.shardQueueSize;
+	}
+
+	public int getHandshakeThreads()
+	{
+		return this.handshakeThreads;
+	}
+
+	// Handshake deadline in milliseconds:
+
+	public int getHandshakeTimeout()
+	{
+		return this.handshakeTimeout;
+	}
+
+	// Accepted sockets that can wait for free handshake thread:
+
+	public int getHandshakeQueueSize()
+	{
+		return this.handshakeQueueSize;
+	}
+
+	// Preferred message format, clients that ask for other
+	// format use serialized format:
+
+	public MessageCodec getWireFormat()
+	{
+		return this.wireFormat;
+	}
+
+	// Compress large frames for clients that ask for it:
+
+	public boolean isCompression()
+	{
+		return this.compression;
+	}
+
+	// Frames written within flush delay are sent as one socket write:
+
+	public FlushPolicy.Mode getFlushMode()
+	{
+		return this.flushMode;
+	}
+
+	public int getFlushDelay()
+	{
+		return this.flushDelay;
+	}
+
+	// Frames waiting to be written to one client before slow
+	// consumer action is taken:
+
+	public int getOutboundQueueSize()
+	{
+		return this.outboundQueueSize;
+	}
+
+	// The same limit in kilobytes:
+
+	public int getOutboundQueueLimit()
+	{
+		return this.outboundQueueLimit;
+	}
+
+	public SlowConsumerPolicy.Action getSlowConsumerAction()
+	{
+		return this.slowConsumerAction;
+	}
+
+	// Threads that queue broadcast for large audience in parallel,
+	// 1 queues it on sending thread only:
+
+	public int getFanOutThreads()
+	{
+		return this.fanOutThreads;
+	}
+
+	// Minimum number of clients one fan-out thread takes at once:
+
+	public int getFanOutStripe()
+	{
+		return this.fanOutStripe;
+	}
+
+	// Number of chat rooms one client can be member of at once:
+
+	public int getMaxRoomsPerClient()
+	{
+		return this.maxRoomsPerClient;
+	}
+
+	// Index of this server in cluster node list:
+
+	public int getNodeId()
+	{
+		return this.nodeId;
+	}
+
+	// Link addresses of all cluster nodes, including this one.
+	// Empty when server runs alone:
+
+	public List<InetSocketAddress> getClusterNodes()
+	{
+		return this.clusterNodes;
+	}
+
+	public boolean isClusterEnabled()
+	{
+		return this.clusterNodes.isEmpty() == false;
+	}
+
+	// Returns null when messages for clients that are not connected
+	// are not stored:
+
+	public String getOfflineDirectory()
+	{
+		return this.offlineDirectory;
+	}
+
+	// Stored message expiry time in minutes:
+
+	public int getOfflineTimeToLive()
+	{
+		return this.offlineTimeToLive;
+	}
+
+	// Size of one offline message segment file in megabytes:
+
+	public int getOfflineSegmentSize()
+	{
+		return this.offlineSegmentSize;
+	}
+
+	// Size limit of all offline message segments in megabytes:
+
+	public int getOfflineMaxSize()
+	{
+		return this.offlineMaxSize;
+	}
+
+	// Messages kept for one recipient, as configured. Server keeps it
+	// below half of outbound queue when it opens store:
+
+	public int getOfflineMaxMessages()
+	{
+		return this.offlineMaxMessages;
+	}
+
+	// Returns null when server log is not written to file:
+
+	public String getLogFile()
+	{
+		return this.logFile;
+	}
+
+	// Maximum log segment size in megabytes:
+
+	public int getLogMaxSize()
+	{
+		return this.logMaxSize;
+	}
+
+	// Log segment rotation interval in minutes:
+
+	public int getLogRotateInterval()
+	{
+		return this.logRotateInterval;
+	}
+
+	public boolean isLogCompress()
+	{
+		return this.logCompress;
+	}
+
+	public int getLogBufferSize()
+	{
+		return this.logBufferSize;
+	}
+
+	// Maximum per-message log lines per second, 0 logs all of them:
+
+	public int getLogSampleRate()
+	{
+		return this.logSampleRate;
+	}
+
+	// Maximum number of records kept in server window log view:
+
+	public int getLogViewCapacity()
+	{
+		return this.logViewCapacity;
+	}
+
+	// Setter methods:
+
+	public void setHeadless(boolean headless)
+	{
+		this.headless = headless;
+	}
+
+	public void setPort(int port)
+	{
+		if(port < 0 || port > 65535)
+		{
+			throw new IllegalArgumentException("Port out of range");
+		}
+		this.port = port;
+	}
+
+	public void setBindAddress(String bindAddress)
+	{
+		if(bindAddress == null || bindAddress.isEmpty() == true)
+		{
+			this.bindAddress = null;
+		}
+		else
+		{
+			this.bindAddress = bindAddress;
+		}
+	}
+
+	public void setBacklog(int backlog)
+	{
+		this.backlog = Math.max(1, backlog);
+	}
+
+	public void setExecutionMode(ExecutionMode executionMode)
+	{
+		this.executionMode = executionMode;
+	}
+
+	public void setEventLoopThreads(int eventLoopThreads)
+	{
+		this.eventLoopThreads = Math.max(1, eventLoopThreads);
+	}
+
+	public void setStreamBufferSize(int streamBufferSize)
+	{
+		this.streamBufferSize = Math.max(512, streamBufferSize);
+	}
+
+	public void setShardQueueSize(int shardQueueSize)
+	{
+		this.shardQueueSize = Math.max(16, shardQueueSize);
+	}
+
+	public void setHandshakeThreads(int handshakeThreads)
+	{
+		this.handshakeThreads = Math.max(1, handshakeThreads);
+	}
+
+	public void setHandshakeTimeout(int handshakeTimeout)
+	{
+		this.handshakeTimeout = Math.max(100, handshakeTimeout);
+	}
+
+	public void setHandshakeQueueSize(int handshakeQueueSize)
+	{
+		this.handshakeQueueSize = Math.max(1, handshakeQueueSize);
+	}
+
+	public void setWireFormat(MessageCodec wireFormat)
+	{
+		this.wireFormat = wireFormat;
+	}
+
+	public void setCompression(boolean compression)
+	{
+		this.compression = compression;
+	}
+
+	public void setFlushMode(FlushPolicy.Mode flushMode)
+	{
+		this.flushMode = flushMode;
+	}
+
+	public void setFlushDelay(int flushDelay)
+	{
+		this.flushDelay = Math.max(0, flushDelay);
+	}
+
+	public void setOutboundQueueSize(int outboundQueueSize)
+	{
+		this.outboundQueueSize = Math.max(16, outboundQueueSize);
+	}
+
+	public void setOutboundQueueLimit(int outboundQueueLimit)
+	{
+		this.outboundQueueLimit = Math.max(64, outboundQueueLimit);
+	}
+
+	public void setSlowConsumerAction(SlowConsumerPolicy.Action slowConsumerAction)
+	{
+		this.slowConsumerAction = slowConsumerAction;
+	}
+
+	public void setFanOutThreads(int fanOutThreads)
+	{
+		this.fanOutThreads = Math.max(1, fanOutThreads);
+	}
+
+	public void setFanOutStripe(int fanOutStripe)
+	{
+		this.fanOutStripe = Math.max(16, fanOutStripe);
+	}
+
+	public void setMaxRoomsPerClient(int maxRoomsPerClient)
+	{
+		this.maxRoomsPerClient = Math.max(1, maxRoomsPerClient);
+	}
+
+	public void setNodeId(int nodeId)
+	{
+		if(nodeId < 0 || nodeId >= ClientIdTable.MAX_NODES)
+		{
+			throw new IllegalArgumentException("Node id has to be from 0 to " + (ClientIdTable.MAX_NODES - 1));
+		}
+		this.nodeId = nodeId;
+	}
+
+	// Nodes are given as comma separated host:port list:
+
+	public void setClusterNodes(String nodes)
+	{
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for(String node : nodes.split(","))
+		{
+			if(node.trim().isEmpty() == true)
+			{
+				continue;
+			}
+			int separator = node.lastIndexOf(':');
+			if(separator < 0)
+			{
+				throw new IllegalArgumentException("Cluster node has no port: " + node);
+			}
+			addresses.add(InetSocketAddress.createUnresolved(node.substring(0, separator).trim(), Integer.parseInt(node.substring(separator + 1).trim())));
+		}
+		if(addresses.size() > ClientIdTable.MAX_NODES)
+		{
+			throw new IllegalArgumentException("Cluster can have at most " + ClientIdTable.MAX_NODES + " nodes");
+		}
+		this.clusterNodes = Collections.unmodifiableList(addresses);
+	}
+
+	public void setOfflineDirectory(String offlineDirectory)
+	{
+		if(offlineDirectory == null || offlineDirectory.isEmpty() == true)
+		{
+			this.offlineDirectory = null;
+		}
+		else
+		{
+			this.offlineDirectory = offlineDirectory;
+		}
+	}
+
+	public void setOfflineTimeToLive(int offlineTimeToLive)
+	{
+		this.offlineTimeToLive = Math.max(1, offlineTimeToLive);
+	}
+
+	public void setOfflineSegmentSize(int offlineSegmentSize)
+	{
+		this.offlineSegmentSize = Math.min(1024, Math.max(1, offlineSegmentSize));
+	}
+
+	public void setOfflineMaxSize(int offlineMaxSize)
+	{
+		this.offlineMaxSize = Math.max(1, offlineMaxSize);
+	}
+
+	public void setOfflineMaxMessages(int offlineMaxMessages)
+	{
+		if(offlineMaxMessages < 1)
+		{
+			throw new IllegalArgumentException("Offline max messages has to be at least 1");
+		}
+		this.offlineMaxMessages = offlineMaxMessages;
+	}
+
+	public void setLogFile(String logFile)
+	{
+		if(logFile == null || logFile.isEmpty() == true)
+		{
+			this.logFile = null;
+		}
+		else
+		{
+			this.logFile = logFile;
+		}
+	}
+
+	public void setLogMaxSize(int logMaxSize)
+	{
+		this.logMaxSize = Math.max(0, logMaxSize);
+	}
+
+	public void setLogRotateInterval(int logRotateInterval)
+	{
+		this.logRotateInterval = Math.max(0, logRotateInterval);
+	}
+
+	public void setLogCompress(boolean logCompress)
+	{
+		this.logCompress = logCompress;
+	}
+
+	public void setLogBufferSize(int logBufferSize)
+	{
+		this.logBufferSize = Math.max(64, logBufferSize);
+	}
+
+	public void setLogSampleRate(int logSampleRate)
+	{
+		this.logSampleRate = Math.max(0, logSampleRate);
+	}
+
+	public void setLogViewCapacity(int logViewCapacity)
+	{
+		this.logViewCapacity = Math.max(100, logViewCapacity);
+	}
+
+	// Class methods:
+
+	public static ServerConfig fromArguments(String[] args)
+	{
+		ServerConfig config = new ServerConfig();
+		for(String argument : args)
+		{
+			int separator = argument.indexOf('=');
+			if(argument.startsWith("--") == false || separator < 0)
+			{
+				System.err.println("Server: Ignoring unknown argument " + argument);
+				continue;
+			}
+			config.setOption(argument.substring(2, separator), argument.substring(separator + 1));
+		}
+		return config;
+	}
+
+	public void loadProperties(String fileName)
+	{
+		Properties properties = new Properties();
+		try(InputStream in = new FileInputStream(fileName))
+		{
+			properties.load(in);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot read configuration file " + fileName + " > " + e.getMessage());
+			return;
+		}
+		for(String name : properties.stringPropertyNames())
+		{
+			this.setOption(name, properties.getProperty(name));
+		}
+	}
+
+	public void setOption(String name, String value)
+	{
+		try
+		{
+			switch(name)
+			{
+				case "config":
+					this.loadProperties(value.trim());
+					break;
+				case "headless":
+					this.setHeadless(Boolean.parseBoolean(value.trim()));
+					break;
+				case "port":
+					this.setPort(Integer.parseInt(value.trim()));
+					break;
+				case "bind":
+					this.setBindAddress(value.trim());
+					break;
+				case "backlog":
+					this.setBacklog(Integer.parseInt(value.trim()));
+					break;
+				case "mode":
+					this.setExecutionMode(ExecutionMode.valueOf(value.trim().toUpperCase()));
+					break;
+				case "event-loops":
+					this.setEventLoopThreads(Integer.parseInt(value.trim()));
+					break;
+				case "stream-buffer":
+					this.setStreamBufferSize(Integer.parseInt(value.trim()));
+					break;
+				case "shard-queue":
+					this.setShardQueueSize(Integer.parseInt(value.trim()));
+					break;
+				case "handshake-threads":
+					this.setHandshakeThreads(Integer.parseInt(value.trim()));
+					break;
+				case "handshake-timeout":
+					this.setHandshakeTimeout(Integer.parseInt(value.trim()));
+					break;
+				case "handshake-queue":
+					this.setHandshakeQueueSize(Integer.parseInt(value.trim()));
+					break;
+				case "wire-format":
+					this.setWireFormat(SocketMessageCodec.forName(value.trim()));
+					break;
+				case "compression":
+					this.setCompression(Boolean.parseBoolean(value.trim()));
+					break;
+				case "flush-policy":
+					this.setFlushMode(FlushPolicy.Mode.valueOf(value.trim().toUpperCase()));
+					break;
+				case "flush-delay":
+					this.setFlushDelay(Integer.parseInt(value.trim()));
+					break;
+				case "outbound-queue":
+					this.setOutboundQueueSize(Integer.parseInt(value.trim()));
+					break;
+				case "outbound-queue-kb":
+					this.setOutboundQueueLimit(Integer.parseInt(value.trim()));
+					break;
+				case "slow-consumer":
+					this.setSlowConsumerAction(SlowConsumerPolicy.Action.valueOf(value.trim().toUpperCase().replace('-', '_')));
+					break;
+				case "fanout-threads":
+					this.setFanOutThreads(Integer.parseInt(value.trim()));
+					break;
+				case "fanout-stripe":
+					this.setFanOutStripe(Integer.parseInt(value.trim()));
+					break;
+				case "max-rooms":
+					this.setMaxRoomsPerClient(Integer.parseInt(value.trim()));
+					break;
+				case "node-id":
+					this.setNodeId(Integer.parseInt(value.trim()));
+					break;
+				case "cluster-nodes":
+					this.setClusterNodes(value);
+					break;
+				case "offline-dir":
+					this.setOfflineDirectory(value.trim());
+					break;
+				case "offline-ttl":
+					this.setOfflineTimeToLive(Integer.parseInt(value.trim()));
+					break;
+				case "offline-segment-size":
+					this.setOfflineSegmentSize(Integer.parseInt(value.trim()));
+					break;
+				case "offline-max-size":
+					this.setOfflineMaxSize(Integer.parseInt(value.trim()));
+					break;
+				case "offline-max-messages":
+					this.setOfflineMaxMessages(Integer.parseInt(value.trim()));
+					break;
+				case "log-file":
+					this.setLogFile(value.trim());
+					break;
+				case "log-max-size":
+					this.setLogMaxSize(Integer.parseInt(value.trim()));
+					break;
+				case "log-rotate-interval":
+					this.setLogRotateInterval(Integer.parseInt(value.trim()));
+					break;
+				case "log-compress":
+					this.setLogCompress(Boolean.parseBoolean(value.trim()));
+					break;
+				case "log-buffer":
+					this.setLogBufferSize(Integer.parseInt(value.trim()));
+					break;
+				case "log-sample-rate":
+					this.setLogSampleRate(Integer.parseInt(value.trim()));
+					break;
+				case "log-view-capacity":
+					this.setLogViewCapacity(Integer.parseInt(value.trim()));
+					break;
+				default:
+					System.err.println("Server: Ignoring unknown option " + name);
+			}
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println("Server: Invalid value \"" + value + "\" for option " + name);
+		}
+	}
+
+	// Inner classes:
+
+	public enum ExecutionMode
+	{
+		// One platform thread per connected client:
+		THREADED,
+		// One virtual thread per connected client:
+		VIRTUAL,
+		// Small set of selector event loops for all clients:
+		NIO
+	}
+}
@@ -9,7 +9,13 @@
  *     12/07/2017
  * 
  * Class description:
- *    This class is used to save server logs to text file.
+ *    This class writes server log to text files. When it is created
+ *    for log file, it is log sink that continuously appends every batch
+ *    of log records to current log segment through reusable direct
+ *    buffer. Segment is rotated when it reaches maximum size or age,
+ *    and rotated segments can be compressed with gzip in background.
+ *    Saving log to another file is also done in background, so it
+ *    never blocks server window.
  * 
  */
 
@@ -18,11 +24,57 @@ package model;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
 
-public class ServerLogModel 
+public class ServerLogModel implements LogSink
 {
 	// Properties:
 	
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	
+	private Path logPath = null;
+	private long maxSegmentSize = 0;
+	private long rotationInterval = 0;
+	private boolean compressSegments = false;
+	
+	private FileChannel logChannel = null;
+	private long segmentSize = 0;
+	private long segmentStarted = 0;
+	private final ReentrantLock segmentLock = new ReentrantLock();
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private final ExecutorService backgroundWriter = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable task)
+		{
+			Thread thread = new Thread(task, "ServerLogWriter");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
 	// Default Constructor:
 	
 	public ServerLogModel() 
@@ -30,30 +82,240 @@ public class ServerLogModel
 		
 	}
 	
-	// Save server log history to .txt file: 
+	// Continuous log with rotation. Maximum size is in bytes and
+	// rotation interval in milliseconds, 0 disables either of them:
+	
+	public ServerLogModel(File logFile, long maxSegmentSize, long rotationInterval, boolean compressSegments) throws IOException
+	{
+		this.logPath = logFile.toPath().toAbsolutePath();
+		this.maxSegmentSize = maxSegmentSize;
+		this.rotationInterval = rotationInterval;
+		this.compressSegments = compressSegments;
+		
+		if(this.logPath.getParent() != null)
+		{
+			Files.createDirectories(this.logPath.getParent());
+		}
+		this.openSegment();
+	}
+	
+	// Append server log records to current log segment. Called only
+	// by log consumer thread:
+	
+	@Override
+	public void writeLog(List<LogRecord> records)
+	{
+		if(this.logPath == null)
+		{
+			return;
+		}
+		
+		this.segmentLock.lock();
+		try
+		{
+			if(this.isRotationDue() == true)
+			{
+				this.rotateSegment();
+			}
+			for(LogRecord record : records)
+			{
+				this.encodeLine(record.toString());
+			}
+			this.flushBuffer();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot write server log > " + e.getMessage());
+			this.writeBuffer.clear();
+		}
+		finally
+		{
+			this.segmentLock.unlock();
+		}
+	}
+	
+	// Save server log history to .txt file. If server writes continuous
+	// log, current log segment is copied, otherwise given text is saved: 
 	
-	public void stroreServerLog(File file, String serverLog) 
+	public void stroreServerLog(final File file, final String serverLog) 
 	{
-        try 
-        {
-            BufferedWriter bufferedWriter = null;
-            if(file.getName().contains(".txt")) 
-            {
-                bufferedWriter = new BufferedWriter(new FileWriter(file));
-            } else {
-               bufferedWriter = new BufferedWriter(new FileWriter(file + ".txt"));
-            }
-            
-            bufferedWriter.write(serverLog);
-            bufferedWriter.close();
-     
-        } 
-        catch (Exception e) 
-        {
-            System.err.format("Error occured during '%s' file writing.", file.toString());
-        }
+		final File target = file.getName().contains(".txt") ? file : new File(file + ".txt");
+		
+		this.backgroundWriter.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try 
+				{
+					if(logPath != null)
+					{
+						copySegment(target.toPath());
+					}
+					else
+					{
+						BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(target));
+						bufferedWriter.write(serverLog);
+						bufferedWriter.close();
+					}
+				} 
+				catch (Exception e) 
+				{
+					System.err.format("Error occured during '%s' file writing.", target.toString());
+				}
+			}
+		});
     }
 	
+	public void close()
+	{
+		this.segmentLock.lock();
+		try
+		{
+			if(this.logChannel != null)
+			{
+				this.logChannel.close();
+				this.logChannel = null;
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot close server log > " + e.getMessage());
+		}
+		finally
+		{
+			this.segmentLock.unlock();
+		}
+		this.backgroundWriter.shutdown();
+	}
+	
+	private void openSegment() throws IOException
+	{
+		this.logChannel = FileChannel.open(this.logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.segmentSize = this.logChannel.size();
+		this.segmentStarted = System.currentTimeMillis();
+	}
+	
+	private boolean isRotationDue()
+	{
+		if(this.segmentSize == 0)
+		{
+			return false;
+		}
+		if(this.maxSegmentSize > 0 && this.segmentSize >= this.maxSegmentSize)
+		{
+			return true;
+		}
+		return this.rotationInterval > 0 && System.currentTimeMillis() - this.segmentStarted >= this.rotationInterval;
+	}
+	
+	// Rename current segment to name with time stamp, compress it
+	// in background and start new segment:
+	
+	private void rotateSegment() throws IOException
+	{
+		this.logChannel.close();
+		
+		String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		Path rotated = this.logPath.resolveSibling(this.logPath.getFileName() + "." + stamp);
+		for(int suffix = 1; Files.exists(rotated) == true || Files.exists(rotated.resolveSibling(rotated.getFileName() + ".gz")) == true; suffix++)
+		{
+			rotated = this.logPath.resolveSibling(this.logPath.getFileName() + "." + stamp + "-" + suffix);
+		}
+		Files.move(this.logPath, rotated);
+		this.openSegment();
+		
+		if(this.compressSegments == true)
+		{
+			final Path segment = rotated;
+			this.backgroundWriter.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					compressSegment(segment);
+				}
+			});
+		}
+	}
+	
+	private void encodeLine(String line) throws IOException
+	{
+		CharBuffer characters = CharBuffer.wrap(line + LINE_SEPARATOR);
+		this.encoder.reset();
+		while(true)
+		{
+			CoderResult result = this.encoder.encode(characters, this.writeBuffer, true);
+			if(result.isOverflow() == true)
+			{
+				this.flushBuffer();
+			}
+			else
+			{
+				break;
+			}
+		}
+	}
+	
+	private void flushBuffer() throws IOException
+	{
+		this.writeBuffer.flip();
+		while(this.writeBuffer.hasRemaining() == true)
+		{
+			this.segmentSize += this.logChannel.write(this.writeBuffer);
+		}
+		this.writeBuffer.clear();
+	}
+	
+	private void copySegment(Path target) throws IOException
+	{
+		FileChannel segment = null;
+		long length = 0;
+		this.segmentLock.lock();
+		try
+		{
+			segment = FileChannel.open(this.logPath, StandardOpenOption.READ);
+			length = this.segmentSize;
+		}
+		finally
+		{
+			this.segmentLock.unlock();
+		}
+		
+		try(FileChannel source = segment; FileChannel destination = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			long copied = 0;
+			while(copied < length)
+			{
+				copied += source.transferTo(copied, length - copied, destination);
+			}
+		}
+	}
+	
+	private void compressSegment(Path segment)
+	{
+		Path compressed = segment.resolveSibling(segment.getFileName() + ".gz");
+		Path temporary = segment.resolveSibling(segment.getFileName() + ".gz.tmp");
+		try
+		{
+			try(InputStream in = Files.newInputStream(segment); OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary)))
+			{
+				byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+				int read = 0;
+				while((read = in.read(buffer)) > 0)
+				{
+					out.write(buffer, 0, read);
+				}
+			}
+			Files.move(temporary, compressed, StandardCopyOption.REPLACE_EXISTING);
+			Files.delete(segment);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Server: Cannot compress log segment " + segment + " > " + e.getMessage());
+		}
+	}
+	
 	// Setter  methods:
 	
 	// Class methods:
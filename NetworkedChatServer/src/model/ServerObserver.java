@@ -21,5 +21,5 @@ public interface ServerObserver
 {
 	// Class methods:
 	
-	public void updateObserver(SocketMessage data);
+	public void updateObserver(Frame frame);
 }
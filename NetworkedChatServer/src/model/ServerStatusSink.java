@@ -0,0 +1,29 @@
+/* File: ServerStatusSink.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is destination for server status: status line
+ *     and list of connected clients. Server window is one implementation,
+ *     console output for headless server is another. Log messages go
+ *     through ServerLogController to log sinks.
+ *
+ */
+
+package model;
+
+import java.util.List;
+
+public interface ServerStatusSink
+{
+	// Class methods:
+
+	public void setStatusMessage(String message);
+	public void setClientList(List<String> clientNames);
+}
@@ -0,0 +1,26 @@
+/* File: SlowConsumerListener.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This interface is notified when connected client starts falling
+ *     behind and when it catches up again. It is called from thread
+ *     that queued or wrote frame, so it must not block.
+ *
+ */
+
+package model;
+
+public interface SlowConsumerListener
+{
+	// Class methods:
+
+	public void clientLagging(ClientModel client);
+	public void clientCaughtUp(ClientModel client);
+}
@@ -0,0 +1,94 @@
+/* File: SlowConsumerPolicy.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class decides what happens to client that does not read
+ *    its frames fast enough. Client is lagging when frames or bytes
+ *    waiting in its outbound queue go over the limit, and then
+ *    configured action is taken: client is disconnected, broadcast
+ *    messages to it are dropped, or client list updates to it are
+ *    collapsed into the latest one. Actions that keep queuing other
+ *    frames still disconnect client at twice the limit.
+ *
+ */
+
+package model;
+
+public class SlowConsumerPolicy
+{
+	// Properties:
+
+	private Action action = Action.DISCONNECT;
+	private int maxFrames = 0;
+	private long maxBytes = 0;
+
+	// Default constructor:
+
+	public SlowConsumerPolicy(Action action, int maxFrames, long maxBytes)
+	{
+		this.action = action;
+		this.maxFrames = maxFrames;
+		this.maxBytes = maxBytes;
+	}
+
+	// Getter methods:
+
+	public Action getAction()
+	{
+		return this.action;
+	}
+
+	public int getMaxFrames()
+	{
+		return this.maxFrames;
+	}
+
+	public long getMaxBytes()
+	{
+		return this.maxBytes;
+	}
+
+	// Class methods:
+
+	public boolean isOverLimit(int frames, long bytes)
+	{
+		return frames > this.maxFrames || bytes > this.maxBytes;
+	}
+
+	// Client over hard limit is disconnected whatever action is:
+
+	public boolean isOverHardLimit(int frames, long bytes)
+	{
+		if(this.action == Action.DISCONNECT)
+		{
+			return this.isOverLimit(frames, bytes);
+		}
+		return frames > 2 * this.maxFrames || bytes > 2 * this.maxBytes;
+	}
+
+	// Lagging client caught up when its queue is back to half of limit:
+
+	public boolean isCaughtUp(int frames, long bytes)
+	{
+		return frames <= this.maxFrames / 2 && bytes <= this.maxBytes / 2;
+	}
+
+	// Inner classes:
+
+	public enum Action
+	{
+		// Disconnect lagging client:
+		DISCONNECT,
+		// Drop broadcasts to lagging client, keep direct messages:
+		DROP_BROADCASTS,
+		// Replace queued client list updates with the latest list:
+		COALESCE_UPDATES
+	}
+}
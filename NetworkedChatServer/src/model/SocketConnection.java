@@ -0,0 +1,293 @@
+/* File: SocketConnection.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is blocking client connection. Every client
+ *    served this way needs its own thread that waits in getData()
+ *    for new frames. Sent frames are put into bounded outbound queue
+ *    and written by writer task of this connection, so thread that
+ *    routes message never blocks on socket of other client. Writer
+ *    writes all queued frames and flushes according to flush policy,
+ *    so burst of frames to the same client goes out in one socket
+ *    write. Client that does not read fast enough is handled by
+ *    slow consumer policy of its queue.
+ *
+ */
+
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SocketConnection implements ClientConnection
+{
+	// Properties:
+
+	private Socket clientSocket = null;
+	private DataInputStream dataIn = null;
+	private DataOutputStream dataOut = null;
+	private volatile boolean open = false;
+	private volatile MessageCodec messageCodec = SocketMessageCodec.BINARY;
+	private volatile boolean compressionEnabled = false;
+	private FlushPolicy flushPolicy = null;
+	
+	// Outbound queue is drained by at most one writer task at a time:
+	private OutboundQueue outboundQueue = null;
+	private Executor writerExecutor = null;
+	private final AtomicBoolean writerScheduled = new AtomicBoolean(false);
+	private final Runnable writerTask = new OutboundWriter();
+	private final Runnable flushTask = new ScheduledFlush();
+	private volatile boolean flushRequested = false;
+	private volatile boolean closeRequested = false;
+	
+	// Only used by writer task:
+	private long lastFlushTime = 0;
+	private boolean flushScheduled = false;
+
+	// Default constructor:
+
+	public SocketConnection(Socket clientSocket, int bufferSize, SlowConsumerPolicy slowConsumerPolicy, FlushPolicy flushPolicy, Executor writerExecutor) throws IOException
+	{
+		this.clientSocket = clientSocket;
+		this.flushPolicy = flushPolicy;
+		this.writerExecutor = writerExecutor;
+		this.outboundQueue = new OutboundQueue(slowConsumerPolicy);
+		this.dataIn = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream(), bufferSize));
+		this.dataOut = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream(), bufferSize));
+		this.open = true;
+	}
+
+	// Getter methods:
+
+	public Socket getClientSocket()
+	{
+		return this.clientSocket;
+	}
+
+	@Override
+	public OutboundQueue getOutboundQueue()
+	{
+		return this.outboundQueue;
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return this.open;
+	}
+
+	@Override
+	public String getRemoteAddress()
+	{
+		return this.clientSocket.getRemoteSocketAddress().toString();
+	}
+
+	@Override
+	public MessageCodec getMessageCodec()
+	{
+		return this.messageCodec;
+	}
+
+	@Override
+	public boolean isCompressionEnabled()
+	{
+		return this.compressionEnabled;
+	}
+
+	// Setter methods:
+
+	@Override
+	public void setMessageCodec(MessageCodec messageCodec)
+	{
+		this.messageCodec = messageCodec;
+	}
+
+	@Override
+	public void setCompressionEnabled(boolean compressionEnabled)
+	{
+		this.compressionEnabled = compressionEnabled;
+	}
+
+	// Class methods:
+
+	public SocketMessage getData() throws IOException
+	{
+		return SocketMessageCodec.readFrame(this.dataIn);
+	}
+
+	@Override
+	public void sendData(SocketMessage data)
+	{
+		try
+		{
+			this.sendFrame(SocketMessageCodec.encode(data, this.messageCodec, this.compressionEnabled), data);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Client " + this.getRemoteAddress() + ": Cannot encode message > " + e.getMessage());
+		}
+	}
+
+	// Queue frame for writer task. Client whose queue went over
+	// hard limit is too slow to keep up with chat, so it is disconnected:
+
+	@Override
+	public void sendFrame(byte[] frame, SocketMessage data)
+	{
+		if(this.open == false)
+		{
+			return;
+		}
+		if(this.outboundQueue.offer(frame, data) == false)
+		{
+			System.err.println("Client " + this.getRemoteAddress() + ": Outbound queue is full, disconnecting slow client");
+			this.abortConnection();
+			return;
+		}
+		this.scheduleWriter();
+	}
+
+	// Already queued frames (for example shut down notification) are
+	// written before socket is closed:
+
+	@Override
+	public void closeConnection()
+	{
+		this.open = false;
+		this.closeRequested = true;
+		this.scheduleWriter();
+	}
+
+	// Close socket without writing queued frames:
+
+	private void abortConnection()
+	{
+		this.open = false;
+		this.outboundQueue.clear();
+		this.closeSocket();
+	}
+
+	private void closeSocket()
+	{
+		try
+		{
+			this.clientSocket.close();
+		}
+		catch (IOException e)
+		{
+			System.err.println("Client " + this.getRemoteAddress() + ": Cannot close socket > " + e.getMessage());
+		}
+	}
+
+	private void scheduleWriter()
+	{
+		if(this.writerScheduled.compareAndSet(false, true) == true)
+		{
+			try
+			{
+				this.writerExecutor.execute(this.writerTask);
+			}
+			catch (RejectedExecutionException e)
+			{
+				this.writerScheduled.set(false);
+				this.abortConnection();
+			}
+		}
+	}
+
+	// Write all queued frames and flush them if policy says so,
+	// otherwise one delayed flush is scheduled for all of them.
+	// Returns false when connection has to be closed:
+
+	private boolean writeQueuedFrames() throws IOException
+	{
+		byte[] frame = null;
+		while((frame = this.outboundQueue.poll()) != null)
+		{
+			this.dataOut.write(frame);
+		}
+
+		if(this.closeRequested == true)
+		{
+			this.dataOut.flush();
+			return false;
+		}
+		if(this.flushRequested == true || this.flushPolicy.isFlushDue(this.lastFlushTime) == true)
+		{
+			this.flushRequested = false;
+			this.flushScheduled = false;
+			this.lastFlushTime = System.nanoTime();
+			this.dataOut.flush();
+		}
+		else if(this.flushScheduled == false)
+		{
+			this.flushScheduled = true;
+			this.flushPolicy.scheduleFlush(this.flushTask);
+		}
+		return true;
+	}
+
+	// Inner classes:
+
+	class OutboundWriter implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			try
+			{
+				while(true)
+				{
+					if(writeQueuedFrames() == false)
+					{
+						closeSocket();
+						return;
+					}
+					writerScheduled.set(false);
+
+					// Frame queued after last poll did not start
+					// new writer, because this one was still running:
+					if(outboundQueue.isEmpty() == true && flushRequested == false && closeRequested == false)
+					{
+						return;
+					}
+					if(writerScheduled.compareAndSet(false, true) == false)
+					{
+						return;
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				abortConnection();
+			}
+		}
+	}
+
+	// Delayed flush is done by writer task, so timer thread never
+	// blocks in socket write:
+
+	class ScheduledFlush implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			flushRequested = true;
+			scheduleWriter();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/* File: SocketMessageCodec.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class converts socket messages to length prefixed frames
+ *    and back. Every frame is 4 byte big-endian payload length followed
+ *    by payload, so both blocking streams and non-blocking channels
+ *    can find message boundaries without reading past them. First
+ *    payload byte tells which MessageCodec encoded rest of it, and
+ *    if rest of it is compressed by FrameCompressor.
+ *
+ */
+
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+public final class SocketMessageCodec
+{
+	// Properties:
+
+	public static final int HEADER_LENGTH = 4;
+	public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	public static final int FORMAT_SERIALIZED = 0;
+	public static final int FORMAT_BINARY = 1;
+	public static final int FORMAT_COUNT = 2;
+
+	public static final MessageCodec SERIALIZED = new SerializedMessageCodec();
+	public static final MessageCodec BINARY = new BinaryMessageCodec();
+
+	// Default constructor:
+
+	private SocketMessageCodec()
+	{
+
+	}
+
+	// Class methods:
+
+	public static MessageCodec forFormat(int format) throws IOException
+	{
+		switch(format)
+		{
+			case FORMAT_SERIALIZED:
+				return SERIALIZED;
+			case FORMAT_BINARY:
+				return BINARY;
+			default:
+				throw new IOException("Unknown message format " + format);
+		}
+	}
+
+	public static MessageCodec forName(String name)
+	{
+		if(SERIALIZED.getName().equalsIgnoreCase(name) == true)
+		{
+			return SERIALIZED;
+		}
+		if(BINARY.getName().equalsIgnoreCase(name) == true)
+		{
+			return BINARY;
+		}
+		throw new IllegalArgumentException("Unknown message format " + name);
+	}
+
+	// Encode message to complete frame (header and payload). Large
+	// payload is compressed when connection agreed on compression:
+
+	public static byte[] encode(SocketMessage data, MessageCodec codec, boolean compress) throws IOException
+	{
+		FrameOutputStream frameOut = new FrameOutputStream();
+		frameOut.write(codec.getFormat());
+		codec.encode(data, frameOut);
+		if(compress == true && frameOut.size() - HEADER_LENGTH - 1 >= FrameCompressor.COMPRESSION_THRESHOLD)
+		{
+			return frameOut.toCompressedFrame();
+		}
+		return frameOut.toFrame();
+	}
+
+	// Decode message from frame payload. Binary client messages are
+	// only routed, so they are kept as copy of received frame. This is
+	// the one copy on NIO relay path: payload is in connection read
+	// buffer, which is compacted and filled again by next read, while
+	// relayed frame waits in recipient's write queue, so it cannot be
+	// slice of that buffer:
+
+	public static SocketMessage decode(byte[] payload, int offset, int length) throws IOException
+	{
+		return decode(payload, offset, length, false);
+	}
+
+	// When frameOwned is true, buffer is complete frame that nobody
+	// else uses, so relayed message can keep it without copying.
+	// Every received message is stamped with time of receipt:
+
+	private static SocketMessage decode(byte[] buffer, int offset, int length, boolean frameOwned) throws IOException
+	{
+		long receivedTime = System.currentTimeMillis();
+		if(FrameCompressor.isCompressed(buffer[offset]) == true)
+		{
+			byte[] payload = FrameCompressor.decompress(buffer, offset + 1, length - 1);
+			SocketMessage data = forFormat(FrameCompressor.getMessageFormat(buffer[offset])).decode(payload, 0, payload.length);
+			data.setTimeMillis(receivedTime);
+			return data;
+		}
+		if(buffer[offset] == FORMAT_BINARY)
+		{
+			int recipientId = BinaryMessageCodec.readRecipientId(buffer, offset + 1, length - 1);
+			if(recipientId != 0)
+			{
+				byte[] frame = buffer;
+				if(frameOwned == false)
+				{
+					frame = new byte[HEADER_LENGTH + length];
+					System.arraycopy(buffer, offset, frame, HEADER_LENGTH, length);
+					writeHeader(frame, length);
+				}
+				BinaryMessageCodec.putTimeMillis(frame, HEADER_LENGTH + 1, receivedTime);
+				return new RelayMessage(frame, recipientId, BinaryMessageCodec.readSenderId(buffer, offset + 1, length - 1));
+			}
+		}
+		SocketMessage data = forFormat(buffer[offset]).decode(buffer, offset + 1, length - 1);
+		data.setTimeMillis(receivedTime);
+		return data;
+	}
+
+	// Read and decode one frame from blocking stream:
+
+	public static SocketMessage readFrame(DataInputStream dataIn) throws IOException
+	{
+		int length = checkFrameLength(dataIn.readInt());
+		byte[] frame = new byte[HEADER_LENGTH + length];
+		writeHeader(frame, length);
+		dataIn.readFully(frame, HEADER_LENGTH, length);
+		return decode(frame, HEADER_LENGTH, length, true);
+	}
+
+	public static int checkFrameLength(int length) throws IOException
+	{
+		if(length <= 0 || length > MAX_FRAME_LENGTH)
+		{
+			throw new IOException("Invalid frame length " + length);
+		}
+		return length;
+	}
+
+	private static void writeHeader(byte[] frame, int length)
+	{
+		frame[0] = (byte)(length >>> 24);
+		frame[1] = (byte)(length >>> 16);
+		frame[2] = (byte)(length >>> 8);
+		frame[3] = (byte)length;
+	}
+
+	// Inner classes:
+
+	// Byte array stream that reserves space for frame header, so
+	// encoded payload does not have to be copied one more time:
+
+	static class FrameOutputStream extends ByteArrayOutputStream
+	{
+		public FrameOutputStream()
+		{
+			super(256);
+			this.count = HEADER_LENGTH;
+		}
+
+		public byte[] toFrame()
+		{
+			writeHeader(this.buf, this.count - HEADER_LENGTH);
+			return this.toByteArray();
+		}
+
+		// Falls back to uncompressed frame when compression does
+		// not make payload smaller:
+
+		public byte[] toCompressedFrame()
+		{
+			int payloadOffset = HEADER_LENGTH + 1;
+			byte[] compressed = FrameCompressor.compress(this.buf, payloadOffset, this.count - payloadOffset);
+			if(compressed == null)
+			{
+				return this.toFrame();
+			}
+			byte[] frame = new byte[payloadOffset + compressed.length];
+			writeHeader(frame, 1 + compressed.length);
+			frame[HEADER_LENGTH] = (byte)(this.buf[HEADER_LENGTH] | FrameCompressor.COMPRESSED_FLAG);
+			System.arraycopy(compressed, 0, frame, payloadOffset, compressed.length);
+			return frame;
+		}
+	}
+}
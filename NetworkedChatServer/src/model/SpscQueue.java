@@ -0,0 +1,90 @@
+/* File: SpscQueue.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *    This class is bounded lock-free queue for exactly one producer
+ *    thread and one consumer thread. Elements are kept in ring array,
+ *    producer only moves tail and consumer only moves head, so neither
+ *    of them ever waits for the other or for a lock. Ordered writes of
+ *    head and tail publish elements without full memory barrier.
+ *
+ */
+
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class SpscQueue<E>
+{
+	// Properties:
+
+	private final AtomicReferenceArray<E> elements;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	// Only used by producer:
+	private long cachedHead = 0;
+
+	// Default constructor:
+
+	// Capacity is rounded up to power of two:
+
+	public SpscQueue(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.elements = new AtomicReferenceArray<E>(size);
+		this.mask = size - 1;
+	}
+
+	// Getter methods:
+
+	public boolean isEmpty()
+	{
+		return this.head.get() == this.tail.get();
+	}
+
+	// Class methods:
+
+	// Called only by producer. Returns false when queue is full:
+
+	public boolean offer(E element)
+	{
+		long currentTail = this.tail.get();
+		if(currentTail - this.cachedHead > this.mask)
+		{
+			this.cachedHead = this.head.get();
+			if(currentTail - this.cachedHead > this.mask)
+			{
+				return false;
+			}
+		}
+		this.elements.lazySet((int)currentTail & this.mask, element);
+		this.tail.lazySet(currentTail + 1);
+		return true;
+	}
+
+	// Called only by consumer. Returns null when queue is empty:
+
+	public E poll()
+	{
+		long currentHead = this.head.get();
+		if(currentHead == this.tail.get())
+		{
+			return null;
+		}
+		int index = (int)currentHead & this.mask;
+		E element = this.elements.get(index);
+		this.elements.lazySet(index, null);
+		this.head.lazySet(currentHead + 1);
+		return element;
+	}
+}
@@ -0,0 +1,72 @@
+/* File: ConsoleStatusSink.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This class prints server status and server log to standard
+ *     output. It is used by headless server, which has no ServerWindow.
+ *
+ */
+
+package view;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.LogRecord;
+import model.LogSink;
+import model.ServerStatusSink;
+
+public class ConsoleStatusSink implements ServerStatusSink, LogSink
+{
+	// Properties:
+
+	private PrintStream out = null;
+	private final AtomicInteger connectedClients = new AtomicInteger(0);
+
+	// Default constructor:
+
+	public ConsoleStatusSink(PrintStream out)
+	{
+		this.out = out;
+	}
+
+	// Class methods:
+
+	@Override
+	public void writeLog(List<LogRecord> records)
+	{
+		StringBuilder lines = new StringBuilder();
+		for(LogRecord record : records)
+		{
+			lines.append(record).append(System.lineSeparator());
+		}
+		this.out.print(lines);
+		this.out.flush();
+	}
+
+	@Override
+	public void setStatusMessage(String message)
+	{
+		this.out.println("Server status: " + message);
+	}
+
+	@Override
+	public void setClientList(List<String> clientNames)
+	{
+		// Client list is updated from several I/O threads, so only the thread
+		// that changes the count prints it:
+		int count = clientNames.size();
+		if(this.connectedClients.getAndSet(count) != count)
+		{
+			this.out.println("Connected clients: " + count);
+		}
+	}
+}
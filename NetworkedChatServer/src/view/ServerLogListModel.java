@@ -0,0 +1,129 @@
+/* File: ServerLogListModel.java
+ *
+ * Authors:
+ *     Alex Viznytsya
+ *     Sean Martinelli
+ *
+ *
+ * Date:
+ *     12/07/2017
+ *
+ * Class description:
+ *     This class is list model for server log view. Records are kept
+ *     in fixed size ring, so when it is full, oldest records are evicted
+ *     and memory used by log view does not grow. Model must be used
+ *     only from Swing event thread.
+ *
+ */
+
+package view;
+
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+import model.LogRecord;
+
+public class ServerLogListModel extends AbstractListModel<LogRecord>
+{
+	// Properties:
+
+	private LogRecord[] records = null;
+	private int head = 0;
+	private int size = 0;
+
+	// Default constructor:
+
+	public ServerLogListModel(int capacity)
+	{
+		this.records = new LogRecord[Math.max(1, capacity)];
+	}
+
+	// Getter methods:
+
+	@Override
+	public int getSize()
+	{
+		return this.size;
+	}
+
+	@Override
+	public LogRecord getElementAt(int index)
+	{
+		return this.records[(this.head + index) % this.records.length];
+	}
+
+	public int getCapacity()
+	{
+		return this.records.length;
+	}
+
+	// Setter methods:
+
+	// Change capacity, keeping newest records that fit:
+
+	public void setCapacity(int capacity)
+	{
+		LogRecord[] resized = new LogRecord[Math.max(1, capacity)];
+		int kept = Math.min(this.size, resized.length);
+		for(int i = 0; i < kept; i++)
+		{
+			resized[i] = this.getElementAt(this.size - kept + i);
+		}
+		int oldSize = this.size;
+		this.records = resized;
+		this.head = 0;
+		this.size = kept;
+		if(oldSize > kept)
+		{
+			this.fireIntervalRemoved(this, 0, oldSize - kept - 1);
+		}
+		this.fireContentsChanged(this, 0, Math.max(0, kept - 1));
+	}
+
+	// Class methods:
+
+	public void addRecords(List<LogRecord> batch)
+	{
+		int added = Math.min(batch.size(), this.records.length);
+		int evicted = Math.max(0, this.size + added - this.records.length);
+		if(added == 0)
+		{
+			return;
+		}
+
+		// Oldest records are evicted first, so listeners see removal with
+		// indices records had before it and size that matches it:
+
+		if(evicted > 0)
+		{
+			for(int i = 0; i < evicted; i++)
+			{
+				this.records[(this.head + i) % this.records.length] = null;
+			}
+			this.head = (this.head + evicted) % this.records.length;
+			this.size -= evicted;
+			this.fireIntervalRemoved(this, 0, evicted - 1);
+		}
+
+		int first = this.size;
+		for(int i = batch.size() - added; i < batch.size(); i++)
+		{
+			this.records[(this.head + this.size) % this.records.length] = batch.get(i);
+			this.size++;
+		}
+		this.fireIntervalAdded(this, first, this.size - 1);
+	}
+
+	// Text of records that are still in view:
+
+	public String getText()
+	{
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < this.size; i++)
+		{
+			text.append(this.getElementAt(i)).append(System.lineSeparator());
+		}
+		return text.toString();
+	}
+}
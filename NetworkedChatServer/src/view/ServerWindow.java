@@ -17,6 +17,8 @@ package view;
 
 import java.awt.FlowLayout;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
 import java.awt.SystemColor;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -25,20 +27,13 @@ import java.awt.event.AdjustmentListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
-import java.io.IOException;
-
-import java.text.SimpleDateFormat;
-
-import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.html.HTMLDocument;
-import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.JMenuBar;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
@@ -47,16 +42,21 @@ import javax.swing.JLabel;
 import javax.swing.JTextField;
 import javax.swing.JCheckBox;
 import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.SwingConstants;
 import javax.swing.JList;
 import javax.swing.ListSelectionModel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextPane;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
+
+import model.LogRecord;
+import model.LogSink;
+import model.ServerStatusSink;
 
-public class ServerWindow extends JFrame 
+public class ServerWindow extends JFrame implements ServerStatusSink, LogSink
 {
 
 	// Properties:
@@ -70,10 +70,9 @@ public class ServerWindow extends JFrame
 	private JButton btnStopServer = new JButton();
 	private DefaultListModel<String> userListModel = new DefaultListModel<String>();
 	private JList<String> clientList = new JList<String>(userListModel);
-	private JTextPane serverMessagesTextPane = new JTextPane();
+	private ServerLogListModel serverLogModel = new ServerLogListModel(5000);
+	private JList<LogRecord> serverMessagesList = new JList<LogRecord>(serverLogModel);
 	private JLabel lblStatusMessage = new JLabel();
-	private HTMLEditorKit editorKit = new HTMLEditorKit();
-	private HTMLDocument document = new HTMLDocument();
 	private JLabel lblNumConnectedClients = new JLabel();
 	
 	// Default constructor:
@@ -193,19 +192,20 @@ public class ServerWindow extends JFrame
 		contentPane.add(serverMessagesPanel);
 		
 		JScrollPane serverMesagesScrollPanel = new JScrollPane();
-		serverMesagesScrollPanel.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+		serverMesagesScrollPanel.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
 		serverMesagesScrollPanel.setBounds(0, 0, 589, 275);
 		serverMesagesScrollPanel.setBorder(BorderFactory.createMatteBorder(1, 1, 1, 1, Color.BLACK));
 		serverMesagesScrollPanel.getVerticalScrollBar().addAdjustmentListener(new AutoScroll(serverMesagesScrollPanel));
 		serverMessagesPanel.add(serverMesagesScrollPanel);
 		
-		this.serverMessagesTextPane.setEditable(false);
-		this.serverMessagesTextPane.setBackground(SystemColor.window);
-		this.serverMessagesTextPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-		this.serverMessagesTextPane.setContentType("text/html");
-		this.serverMessagesTextPane.setEditorKit(editorKit);
-		this.serverMessagesTextPane.setDocument(document);
-		serverMesagesScrollPanel.setViewportView(this.serverMessagesTextPane);
+		// Fixed row height lets list lay out only rows that are visible. Width
+		// is left to list, so long lines can be scrolled to instead of cut:
+		
+		this.serverMessagesList.setBackground(SystemColor.window);
+		this.serverMessagesList.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+		this.serverMessagesList.setCellRenderer(new LogRecordRenderer());
+		this.serverMessagesList.setFixedCellHeight(18);
+		serverMesagesScrollPanel.setViewportView(this.serverMessagesList);
 		
 		JPanel messagesPanel = new JPanel();
 		serverMesagesScrollPanel.setColumnHeaderView(messagesPanel);
@@ -266,16 +266,9 @@ public class ServerWindow extends JFrame
 		return this.tfServerPort.getText();
 	}
 	
-	public String getHTMLDocument() 
+	public String getServerLogText() 
 	{
-		try 
-		{
-			return this.document.getText(0, this.document.getLength());
-		} 
-		catch (BadLocationException e) 
-		{
-			return null;
-		}
+		return this.serverLogModel.getText();
 	}
 	
 	// Setter methods:
@@ -290,6 +283,7 @@ public class ServerWindow extends JFrame
 		this.tfServerPort.setText(Integer.toString(port));
 	}
 	
+	@Override
 	public void setStatusMessage(String message)
 	{
 		this.lblStatusMessage.setText(message);
@@ -300,6 +294,13 @@ public class ServerWindow extends JFrame
 		this.lblNumConnectedClients.setText(num);
 	}
 	
+	// Maximum number of log records kept in server messages view:
+	
+	public void setLogCapacity(int capacity)
+	{
+		this.serverLogModel.setCapacity(capacity);
+	}
+	
 	// Class methods:
 	
 	public void addMenuItemsActionListener(String mnName, ActionListener actlsn) 
@@ -363,29 +364,38 @@ public class ServerWindow extends JFrame
 		this.userListModel.addElement(user);
 	}
 	
-	// Print message to server log text field:
-	
-	public synchronized void addMessage(String message, boolean important)
+	@Override
+	public void setClientList(final List<String> clientNames)
 	{
-		
-		Date date = new Date( );
-		SimpleDateFormat dateAndTime = new SimpleDateFormat ("MM/dd/yyyy hh:mm:ss");
-		String formatedMessage = null;
-		if(important == true)
+		SwingUtilities.invokeLater(new Runnable()
 		{
-			formatedMessage = "<div style=\"color: red; font-weight: bold;\">" + dateAndTime.format(date) + " > " + message + "</div>";
-		} 
-		else 
+			@Override
+			public void run()
+			{
+				clearUserList();
+				for(String clientName : clientNames)
+				{
+					addUser(clientName);
+				}
+				setConnectedClient(Integer.toString(clientNames.size()));
+			}
+		});
+	}
+	
+	// Add batch of log records to server messages view. Whole
+	// batch is added with one event on Swing event thread:
+	
+	@Override
+	public void writeLog(final List<LogRecord> records)
+	{
+		SwingUtilities.invokeLater(new Runnable()
 		{
-			formatedMessage = dateAndTime.format(date) + " > " + message + "<br>";
-		}
-		try {
-				editorKit.insertHTML(document, this.document.getLength(), formatedMessage, 0, 0, null);
-		} catch (BadLocationException | IOException e) {
-			System.err.println("Cannot add new message: " + e.getMessage());
-		}
-		
-		
+			@Override
+			public void run()
+			{
+				serverLogModel.addRecords(records);
+			}
+		});
 	}
 	
 	// Inner classes:
@@ -423,6 +433,34 @@ public class ServerWindow extends JFrame
 		
 	}
 	
+	class LogRecordRenderer extends DefaultListCellRenderer
+	{
+		private Font plainFont = null;
+		private Font boldFont = null;
+		
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus)
+		{
+			LogRecord record = (LogRecord)value;
+			super.getListCellRendererComponent(list, record.getTimeStamp() + " > " + record.getMessage(), index, isSelected, cellHasFocus);
+			if(this.plainFont == null)
+			{
+				this.plainFont = list.getFont();
+				this.boldFont = this.plainFont.deriveFont(Font.BOLD);
+			}
+			if(record.isImportant() == true)
+			{
+				this.setFont(this.boldFont);
+				this.setForeground(Color.RED);
+			}
+			else
+			{
+				this.setFont(this.plainFont);
+			}
+			return this;
+		}
+	}
+	
 	class AutoScroll implements AdjustmentListener {  
 		
 		private JScrollPane scrollPane = null;